@@ -0,0 +1,110 @@
+package org.arabidopsis.interval.bench.jmh;
+
+import java.util.Random;
+
+import org.arabidopsis.interval.Interval;
+
+
+/**
+ * Genome-like interval sets for the benchmarks.  Each is seeded, so
+ * every fork and every benchmark sees the same data for the same
+ * parameters.
+ *
+ *     uniform     starts spread evenly, lengths up to 1000; a typical
+ *                 position is covered by a couple of dozen intervals.
+ *     clustered   starts bunched around a few hundred loci, as genes
+ *                 are around dense regions.
+ *     nested      loci of 20 intervals each nested inside the last,
+ *                 like transcripts within a gene.
+ *     duplicated  every interval repeated about 100 times, as reads
+ *                 piling up on the same coordinates.
+ */
+final class Distributions {
+    static final String[] KINDS = {
+	"uniform", "clustered", "nested", "duplicated"
+    };
+
+    private static final int MAX_LENGTH = 1000;
+    private static final int NEST_DEPTH = 20;
+    private static final int DUPLICATES = 100;
+
+
+    private Distributions() {
+    }
+
+
+    static Interval[] generate(String kind, int n, long seed) {
+	Random random = new Random(seed);
+	int span = span(n);
+	Interval[] intervals = new Interval[n];
+	if (kind.equals("uniform")) {
+	    for (int i = 0; i < n; i++) {
+		int low = random.nextInt(span);
+		intervals[i] = new Interval(low, low + random.nextInt(MAX_LENGTH));
+	    }
+	} else if (kind.equals("clustered")) {
+	    int[] centers = new int[Math.max(1, n / 1000)];
+	    for (int i = 0; i < centers.length; i++) {
+		centers[i] = random.nextInt(span);
+	    }
+	    for (int i = 0; i < n; i++) {
+		int center = centers[random.nextInt(centers.length)];
+		int low = clamp(center + (int) (random.nextGaussian() * 5000),
+				span);
+		intervals[i] = new Interval(low, low + random.nextInt(MAX_LENGTH));
+	    }
+	} else if (kind.equals("nested")) {
+	    int low = 0;
+	    int length = 0;
+	    for (int i = 0; i < n; i++) {
+		if (i % NEST_DEPTH == 0) {
+		    length = NEST_DEPTH * 2 * 10 + random.nextInt(20000);
+		    low = random.nextInt(span);
+		}
+		int inset = (i % NEST_DEPTH) * 10;
+		intervals[i] = new Interval(low + inset, low + length - inset);
+	    }
+	} else if (kind.equals("duplicated")) {
+	    Interval current = null;
+	    for (int i = 0; i < n; i++) {
+		if (i % DUPLICATES == 0) {
+		    int low = random.nextInt(span);
+		    current = new Interval(low, low + random.nextInt(MAX_LENGTH));
+		}
+		intervals[i] = new Interval(current.getLow(), current.getHigh());
+	    }
+	} else {
+	    throw new IllegalArgumentException("unknown distribution " + kind);
+	}
+	return intervals;
+    }
+
+
+    // Query positions near the data: each lies within or just past a
+    // randomly chosen interval, so clustered data gets clustered
+    // queries rather than mostly empty ones.
+    static int[] positions(Interval[] intervals, int count, long seed) {
+	Random random = new Random(seed);
+	int[] positions = new int[count];
+	for (int i = 0; i < count; i++) {
+	    Interval interval = intervals[random.nextInt(intervals.length)];
+	    positions[i] = interval.getLow() + random.nextInt(MAX_LENGTH);
+	}
+	return positions;
+    }
+
+
+    // Keeps the density of the uniform data the same at every size.
+    private static int span(int n) {
+	return (int) Math.min(30L * n, Integer.MAX_VALUE - 50000L);
+    }
+
+
+    private static int clamp(int x, int span) {
+	if (x < 0)
+	    return 0;
+	if (x >= span)
+	    return span - 1;
+	return x;
+    }
+}
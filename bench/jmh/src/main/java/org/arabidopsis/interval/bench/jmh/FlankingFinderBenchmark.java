@@ -0,0 +1,80 @@
+package org.arabidopsis.interval.bench.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.arabidopsis.interval.FlankingFinder;
+import org.arabidopsis.interval.Interval;
+
+
+/**
+ * The nearest few features on either side of a position.  The
+ * duplicated distribution is the interesting one: many features
+ * share each coordinate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlankingFinderBenchmark {
+    static final int QUERIES = 1 << 16;
+
+    @Param({"uniform", "clustered", "nested", "duplicated"})
+    public String distribution;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"5"})
+    public int flanks;
+
+    private FlankingFinder finder;
+    private int[] positions;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	Interval[] intervals = Distributions.generate(this.distribution,
+						      this.size, 42);
+	this.finder = new FlankingFinder();
+	for (int i = 0; i < intervals.length; i++) {
+	    this.finder.add(intervals[i], intervals[i].getLow(),
+			    intervals[i].getHigh());
+	}
+	this.positions = Distributions.positions(intervals, QUERIES, 43);
+    }
+
+
+    private int nextPosition() {
+	this.next = (this.next + 1) & (QUERIES - 1);
+	return this.positions[this.next];
+    }
+
+
+    @Benchmark
+    public List flankingLeft() {
+	return this.finder.flankingLeft(nextPosition(), this.flanks);
+    }
+
+
+    @Benchmark
+    public List flankingRight() {
+	return this.finder.flankingRight(nextPosition(), this.flanks);
+    }
+}
@@ -0,0 +1,146 @@
+package org.arabidopsis.interval.bench.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.arabidopsis.interval.Interval;
+import org.arabidopsis.interval.IntervalTree;
+import org.arabidopsis.interval.IntervalVisitor;
+
+
+/**
+ * IntervalTree insert, search and searchAll, plus the allocation-free
+ * forEachOverlap for comparison.  Queries are 100 wide and cycle
+ * through a fixed, seeded set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IntervalTreeBenchmark {
+    // A power of two, so the cursor wraps with a mask.
+    static final int QUERIES = 1 << 16;
+    static final int QUERY_WIDTH = 100;
+
+    @Param({"uniform", "clustered", "nested", "duplicated"})
+    public String distribution;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private Interval[] intervals;
+    private IntervalTree tree;
+    private Interval[] queries;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	this.intervals = Distributions.generate(this.distribution,
+						this.size, 42);
+	this.tree = new IntervalTree();
+	this.tree.bulkLoadUnsorted(this.intervals);
+
+	int[] positions = Distributions.positions(this.intervals, QUERIES, 43);
+	this.queries = new Interval[QUERIES];
+	for (int i = 0; i < QUERIES; i++) {
+	    this.queries[i] = new Interval(positions[i],
+					   positions[i] + QUERY_WIDTH);
+	}
+    }
+
+
+    private Interval nextQuery() {
+	this.next = (this.next + 1) & (QUERIES - 1);
+	return this.queries[this.next];
+    }
+
+
+    // Inserts per invocation of insert().  The tree is never more
+    // than this many intervals past the stated size.
+    static final int INSERT_BATCH = 1024;
+
+
+    /**
+     * A tree of the stated size for insert() alone.  The intervals an
+     * invocation adds are removed again, outside the measurement, so
+     * every batch goes into a tree of size to size + INSERT_BATCH.
+     */
+    @State(Scope.Thread)
+    public static class InsertState {
+	IntervalTree tree;
+	// Fresh intervals, drawn like the loaded ones.
+	Interval[] extra;
+	int from;
+
+
+	@Setup(Level.Trial)
+	public void setUp(IntervalTreeBenchmark loaded) {
+	    this.tree = new IntervalTree();
+	    this.tree.bulkLoadUnsorted(loaded.intervals);
+	    this.extra = Distributions.generate(loaded.distribution,
+						QUERIES, 44);
+	}
+
+
+	@TearDown(Level.Invocation)
+	public void undoInserts() {
+	    for (int i = 0; i < INSERT_BATCH; i++) {
+		this.tree.remove(this.extra[this.from + i]);
+	    }
+	    this.from = (this.from + INSERT_BATCH) & (QUERIES - 1);
+	}
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(INSERT_BATCH)
+    public void insert(InsertState state) {
+	for (int i = 0; i < INSERT_BATCH; i++) {
+	    state.tree.insert(state.extra[state.from + i]);
+	}
+    }
+
+
+    @Benchmark
+    public Interval search() {
+	return this.tree.search(nextQuery());
+    }
+
+
+    @Benchmark
+    public List searchAll() {
+	return this.tree.searchAll(nextQuery());
+    }
+
+
+    @Benchmark
+    public void forEachOverlap(final Blackhole blackhole) {
+	Interval query = nextQuery();
+	this.tree.forEachOverlap(query.getLow(), query.getHigh(),
+				 new IntervalVisitor() {
+				     public boolean visit(Interval interval) {
+					 blackhole.consume(interval);
+					 return true;
+				     }
+				 });
+    }
+}
@@ -0,0 +1,82 @@
+package org.arabidopsis.interval.bench.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.arabidopsis.interval.Interval;
+import org.arabidopsis.interval.OrderStatisticTree;
+import org.arabidopsis.interval.RbNode;
+
+
+/**
+ * OrderStatisticTree select and rank over the low endpoints of each
+ * distribution, which exercises the RbTree subtree sizes underneath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderStatisticTreeBenchmark {
+    static final int QUERIES = 1 << 16;
+
+    @Param({"uniform", "clustered", "nested", "duplicated"})
+    public String distribution;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private OrderStatisticTree tree;
+    private int[] ranks;
+    private int[] keys;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	Interval[] intervals = Distributions.generate(this.distribution,
+						      this.size, 42);
+	this.tree = new OrderStatisticTree();
+	for (int i = 0; i < intervals.length; i++) {
+	    this.tree.insert(new RbNode(intervals[i].getLow()));
+	}
+	Random random = new Random(43);
+	this.ranks = new int[QUERIES];
+	for (int i = 0; i < QUERIES; i++) {
+	    this.ranks[i] = 1 + random.nextInt(this.size);
+	}
+	this.keys = Distributions.positions(intervals, QUERIES, 44);
+    }
+
+
+    private int nextIndex() {
+	this.next = (this.next + 1) & (QUERIES - 1);
+	return this.next;
+    }
+
+
+    @Benchmark
+    public RbNode select() {
+	return this.tree.select(this.ranks[nextIndex()]);
+    }
+
+
+    @Benchmark
+    public int rank() {
+	return this.tree.rank(this.keys[nextIndex()]);
+    }
+}
@@ -0,0 +1,145 @@
+package org.arabidopsis.interval.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.arabidopsis.interval.ConcurrentIntervalTree;
+import org.arabidopsis.interval.Interval;
+import org.arabidopsis.interval.IntervalTree;
+
+
+/**
+ * Measures throughput of ConcurrentIntervalTree against an
+ * IntervalTree behind a single synchronized lock, for read:write
+ * ratios from 100:0 to 50:50 and 1 to 64 threads.
+ *
+ * Usage:
+ *
+ *     ant bench
+ *     java -Xmx4g -cp build:bench/build:lib/log4j-1.2.9.jar \
+ *         org.arabidopsis.interval.bench.ContentionBenchmark [n [millis]]
+ *
+ * n is the number of intervals loaded before each run (default 1M),
+ * and millis how long each configuration runs (default 2000).
+ */
+public class ContentionBenchmark {
+    private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+    private static final int[] READ_PERCENT = { 100, 95, 90, 75, 50 };
+
+
+    public static void main(String[] args) throws Exception {
+	int n = (args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+	long millis = (args.length > 1 ? Long.parseLong(args[1]) : 2000);
+	int span = 30 * n;
+
+	System.out.println("tree\treads%\tthreads\tops/s\treads/s\twrites/s");
+	for (int r = 0; r < READ_PERCENT.length; r++) {
+	    for (int t = 0; t < THREADS.length; t++) {
+		run("stamped", new StampedTarget(), n, span,
+		    READ_PERCENT[r], THREADS[t], millis);
+		run("synchronized", new SynchronizedTarget(), n, span,
+		    READ_PERCENT[r], THREADS[t], millis);
+	    }
+	}
+    }
+
+
+    private static void run(String name, final Target target, int n,
+			    final int span, final int readPercent,
+			    int threadCount, long millis) throws Exception {
+	Random random = new Random(42);
+	Interval[] initial = new Interval[n];
+	for (int i = 0; i < n; i++) {
+	    int low = random.nextInt(span);
+	    initial[i] = new Interval(low, low + random.nextInt(1000));
+	}
+	target.load(initial);
+
+	final AtomicBoolean stop = new AtomicBoolean(false);
+	final long[] reads = new long[threadCount];
+	final long[] writes = new long[threadCount];
+	Thread[] threads = new Thread[threadCount];
+	for (int i = 0; i < threadCount; i++) {
+	    final int id = i;
+	    threads[i] = new Thread() {
+		    public void run() {
+			Random random = new Random(id);
+			long r = 0, w = 0;
+			while (! stop.get()) {
+			    int low = random.nextInt(span);
+			    if (random.nextInt(100) < readPercent) {
+				target.searchAll(new Interval(low, low + 100));
+				r++;
+			    } else {
+				target.insert(new Interval(low, low + 500));
+				w++;
+			    }
+			}
+			reads[id] = r;
+			writes[id] = w;
+		    }
+		};
+	}
+	for (int i = 0; i < threadCount; i++) {
+	    threads[i].start();
+	}
+	Thread.sleep(millis);
+	stop.set(true);
+	long totalReads = 0, totalWrites = 0;
+	for (int i = 0; i < threadCount; i++) {
+	    threads[i].join();
+	    totalReads += reads[i];
+	    totalWrites += writes[i];
+	}
+
+	double seconds = millis / 1000.0;
+	System.out.println(name + "\t" + readPercent + "\t" + threadCount +
+			   "\t" + (long) ((totalReads + totalWrites) / seconds) +
+			   "\t" + (long) (totalReads / seconds) +
+			   "\t" + (long) (totalWrites / seconds));
+    }
+
+
+
+    private interface Target {
+	void load(Interval[] intervals);
+	List searchAll(Interval interval);
+	void insert(Interval interval);
+    }
+
+
+    private static class StampedTarget implements Target {
+	private final ConcurrentIntervalTree tree = new ConcurrentIntervalTree();
+
+	public void load(Interval[] intervals) {
+	    tree.bulkLoadUnsorted(intervals);
+	}
+
+	public List searchAll(Interval interval) {
+	    return tree.searchAll(interval);
+	}
+
+	public void insert(Interval interval) {
+	    tree.insert(interval);
+	}
+    }
+
+
+    // The baseline: one global monitor around every call.
+    private static class SynchronizedTarget implements Target {
+	private final IntervalTree tree = new IntervalTree();
+
+	public synchronized void load(Interval[] intervals) {
+	    tree.bulkLoadUnsorted(intervals);
+	}
+
+	public synchronized List searchAll(Interval interval) {
+	    return tree.searchAll(interval);
+	}
+
+	public synchronized void insert(Interval interval) {
+	    tree.insert(interval);
+	}
+    }
+}
@@ -0,0 +1,127 @@
+package org.arabidopsis.interval.bench;
+
+import java.util.Random;
+
+import org.arabidopsis.interval.Interval;
+import org.arabidopsis.interval.IntervalTree;
+import org.arabidopsis.interval.IntervalVisitor;
+import org.arabidopsis.interval.FrozenIntervalTree;
+
+
+/**
+ * Compares overlap queries on an IntervalTree against its frozen,
+ * pointer-free snapshot, along with the heap each one takes.
+ *
+ * Usage:
+ *
+ *     ant bench
+ *     java -Xmx16g -cp build:bench/build:lib/log4j-1.2.9.jar \
+ *         org.arabidopsis.interval.bench.FreezeBenchmark [n ...]
+ *
+ * The sizes default to 1M, 10M and 100M intervals.  At 100M the
+ * pointer-based tree's nodes take about 6GB (572MB measured at 10M)
+ * on top of some 3GB of Interval objects, hence the 16GB heap.
+ */
+public class FreezeBenchmark {
+    private static final int QUERIES = 1000000;
+    private static final int QUERY_WIDTH = 100;
+    private static final int ROUNDS = 3;
+
+
+    public static void main(String[] args) {
+	int[] sizes = new int[] { 1000000, 10000000, 100000000 };
+	if (args.length > 0) {
+	    sizes = new int[args.length];
+	    for (int i = 0; i < args.length; i++) {
+		sizes[i] = Integer.parseInt(args[i]);
+	    }
+	}
+	System.out.println("n\ttree ns/query\tfrozen ns/query" +
+			   "\ttree MB\tfrozen MB\tmatches");
+	for (int i = 0; i < sizes.length; i++) {
+	    run(sizes[i]);
+	}
+    }
+
+
+    private static void run(int n) {
+	Random random = new Random(42);
+	// Roughly genomic: starts spread so that a point is covered
+	// by a couple of dozen features, lengths up to 1000.
+	int span = (int) Math.min(30L * n, Integer.MAX_VALUE - 2000L);
+	Interval[] intervals = new Interval[n];
+	for (int i = 0; i < n; i++) {
+	    int low = random.nextInt(span);
+	    intervals[i] = new Interval(low, low + random.nextInt(1000));
+	}
+	int[] queries = new int[QUERIES];
+	for (int i = 0; i < QUERIES; i++) {
+	    queries[i] = random.nextInt(span);
+	}
+
+	// The Interval objects are already live, so the tree's figure
+	// is its nodes only; the frozen copy does not need them at all.
+	long before = usedMemory();
+	IntervalTree tree = new IntervalTree();
+	tree.bulkLoadUnsorted(intervals);
+	long treeBytes = usedMemory() - before;
+
+	before = usedMemory();
+	FrozenIntervalTree frozen = tree.freeze();
+	long frozenBytes = usedMemory() - before;
+
+	long treeNanos = Long.MAX_VALUE;
+	long frozenNanos = Long.MAX_VALUE;
+	long treeMatches = 0;
+	long frozenMatches = 0;
+	for (int round = 0; round < ROUNDS; round++) {
+	    Counter counter = new Counter();
+	    long start = System.nanoTime();
+	    for (int i = 0; i < QUERIES; i++) {
+		tree.forEachOverlap(queries[i], queries[i] + QUERY_WIDTH,
+				    counter);
+	    }
+	    treeNanos = Math.min(treeNanos, System.nanoTime() - start);
+	    treeMatches = counter.count;
+
+	    counter = new Counter();
+	    start = System.nanoTime();
+	    for (int i = 0; i < QUERIES; i++) {
+		frozen.forEachOverlap(queries[i], queries[i] + QUERY_WIDTH,
+				      counter);
+	    }
+	    frozenNanos = Math.min(frozenNanos, System.nanoTime() - start);
+	    frozenMatches = counter.count;
+	}
+	if (treeMatches != frozenMatches) {
+	    throw new IllegalStateException("trees disagree: " + treeMatches +
+					    " vs " + frozenMatches);
+	}
+
+	System.out.println(n + "\t" +
+			   (treeNanos / QUERIES) + "\t" +
+			   (frozenNanos / QUERIES) + "\t" +
+			   (treeBytes >> 20) + "\t" +
+			   (frozenBytes >> 20) + "\t" +
+			   treeMatches);
+    }
+
+
+    private static long usedMemory() {
+	Runtime runtime = Runtime.getRuntime();
+	for (int i = 0; i < 3; i++) {
+	    System.gc();
+	}
+	return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    private static class Counter implements IntervalVisitor {
+	long count = 0;
+
+	public boolean visit(Interval interval) {
+	    this.count++;
+	    return true;
+	}
+    }
+}
@@ -0,0 +1,131 @@
+package org.arabidopsis.interval.bench;
+
+import java.util.Random;
+
+import org.arabidopsis.interval.Interval;
+import org.arabidopsis.interval.IntervalTree;
+import org.arabidopsis.interval.IntervalVisitor;
+
+
+/**
+ * Compares point lookups through the general overlap path,
+ * search(new Interval(p, p)) and forEachOverlap(p, p, ...), against
+ * the dedicated stab(p) and forEachStabbing(p, ...).
+ *
+ * Usage:
+ *
+ *     ant bench
+ *     java -cp build:bench/build:lib/log4j-1.2.9.jar \
+ *         org.arabidopsis.interval.bench.StabBenchmark [n ...]
+ *
+ * The sizes default to 100K, 1M and 10M intervals.
+ */
+public class StabBenchmark {
+    private static final int QUERIES = 2000000;
+    private static final int ROUNDS = 5;
+
+
+    public static void main(String[] args) {
+	int[] sizes = new int[] { 100000, 1000000, 10000000 };
+	if (args.length > 0) {
+	    sizes = new int[args.length];
+	    for (int i = 0; i < args.length; i++) {
+		sizes[i] = Integer.parseInt(args[i]);
+	    }
+	}
+	System.out.println("n\tsearch ns\tstab ns" +
+			   "\tforEachOverlap ns\tforEachStabbing ns\tmatches");
+	for (int i = 0; i < sizes.length; i++) {
+	    run(sizes[i]);
+	}
+    }
+
+
+    private static void run(int n) {
+	Random random = new Random(42);
+	// As in FreezeBenchmark: a couple of dozen features over a
+	// typical position, lengths up to 1000.
+	int span = (int) Math.min(30L * n, Integer.MAX_VALUE - 2000L);
+	Interval[] intervals = new Interval[n];
+	for (int i = 0; i < n; i++) {
+	    int low = random.nextInt(span);
+	    intervals[i] = new Interval(low, low + random.nextInt(1000));
+	}
+	int[] positions = new int[QUERIES];
+	for (int i = 0; i < QUERIES; i++) {
+	    positions[i] = random.nextInt(span);
+	}
+	IntervalTree tree = new IntervalTree();
+	tree.bulkLoadUnsorted(intervals);
+
+	long searchNanos = Long.MAX_VALUE;
+	long stabNanos = Long.MAX_VALUE;
+	long overlapNanos = Long.MAX_VALUE;
+	long stabbingNanos = Long.MAX_VALUE;
+	long overlapMatches = 0;
+	long stabbingMatches = 0;
+	int hits = 0;
+	for (int round = 0; round < ROUNDS; round++) {
+	    int searchHits = 0;
+	    long start = System.nanoTime();
+	    for (int i = 0; i < QUERIES; i++) {
+		int p = positions[i];
+		if (tree.search(new Interval(p, p)) != null)
+		    searchHits++;
+	    }
+	    searchNanos = Math.min(searchNanos, System.nanoTime() - start);
+
+	    int stabHits = 0;
+	    start = System.nanoTime();
+	    for (int i = 0; i < QUERIES; i++) {
+		if (tree.stab(positions[i]) != null)
+		    stabHits++;
+	    }
+	    stabNanos = Math.min(stabNanos, System.nanoTime() - start);
+
+	    Counter counter = new Counter();
+	    start = System.nanoTime();
+	    for (int i = 0; i < QUERIES; i++) {
+		tree.forEachOverlap(positions[i], positions[i], counter);
+	    }
+	    overlapNanos = Math.min(overlapNanos, System.nanoTime() - start);
+	    overlapMatches = counter.count;
+
+	    counter = new Counter();
+	    start = System.nanoTime();
+	    for (int i = 0; i < QUERIES; i++) {
+		tree.forEachStabbing(positions[i], counter);
+	    }
+	    stabbingNanos = Math.min(stabbingNanos, System.nanoTime() - start);
+	    stabbingMatches = counter.count;
+
+	    if (searchHits != stabHits) {
+		throw new IllegalStateException("hits disagree: " + searchHits +
+						" vs " + stabHits);
+	    }
+	    hits = stabHits;
+	}
+	if (overlapMatches != stabbingMatches) {
+	    throw new IllegalStateException("matches disagree: " +
+					    overlapMatches + " vs " +
+					    stabbingMatches);
+	}
+
+	System.out.println(n + "\t" +
+			   (searchNanos / QUERIES) + "\t" +
+			   (stabNanos / QUERIES) + "\t" +
+			   (overlapNanos / QUERIES) + "\t" +
+			   (stabbingNanos / QUERIES) + "\t" +
+			   stabbingMatches + " (" + hits + " hit)");
+    }
+
+
+    private static class Counter implements IntervalVisitor {
+	long count = 0;
+
+	public boolean visit(Interval interval) {
+	    this.count++;
+	    return true;
+	}
+    }
+}
@@ -0,0 +1,372 @@
+package org.arabidopsis.interval;
+
+/**
+ * An interval tree with the same red-black algorithms as RbTree and
+ * IntervalTree, but with every node stored as a slot in a handful of
+ * parallel primitive arrays rather than as an object.  Children and
+ * parents are array indices, and index 0 plays the role of the NIL
+ * node.  The arrays grow geometrically as intervals are inserted.
+ *
+ * Intervals are not kept as objects: search() and searchAll() hand
+ * back fresh Interval instances built from the stored endpoints.
+ */
+
+import java.util.List;
+import java.util.ArrayList;
+import org.apache.log4j.Logger;
+
+public class ArrayIntervalTree {
+    private static final int NIL = 0;
+    private static final byte BLACK = 0;
+    private static final byte RED = 1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] low;
+    private int[] high;
+    private int[] maxHigh;
+    private int[] minLow;
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private byte[] color;
+
+    private int root;
+    // Slots 1 .. count are in use; slot 0 is NIL.
+    private int count;
+
+    private Logger logger;
+
+
+    public ArrayIntervalTree() {
+	this(DEFAULT_CAPACITY);
+    }
+
+
+    public ArrayIntervalTree(int initialCapacity) {
+	int capacity = Math.max(initialCapacity, 1) + 1;
+	this.low = new int[capacity];
+	this.high = new int[capacity];
+	this.maxHigh = new int[capacity];
+	this.minLow = new int[capacity];
+	this.left = new int[capacity];
+	this.right = new int[capacity];
+	this.parent = new int[capacity];
+	this.color = new byte[capacity];
+
+	this.maxHigh[NIL] = Integer.MIN_VALUE;
+	this.minLow[NIL] = Integer.MAX_VALUE;
+	this.color[NIL] = BLACK;
+	this.root = NIL;
+	this.count = 0;
+
+	this.logger = Logger.getLogger(this.getClass());
+    }
+
+
+    public void insert(Interval interval) {
+	insert(interval.getLow(), interval.getHigh());
+    }
+
+
+    /**
+     * Inserts the interval [low, high] and returns the index of the
+     * slot that now holds it.
+     */
+    public int insert(int low, int high) {
+	assert low <= high;
+	int inserted = allocate(low, high);
+	int x = inserted;
+
+	treeInsert(x);
+	color[x] = RED;
+	while (x != root && color[parent[x]] == RED) {
+	    int xp = parent[x];
+	    int xpp = parent[xp];
+	    if (xp == left[xpp]) {
+		int y = right[xpp];
+		if (color[y] == RED) {
+		    color[xp] = BLACK;
+		    color[y] = BLACK;
+		    color[xpp] = RED;
+		    x = xpp;
+		} else {
+		    if (x == right[xp]) {
+			x = xp;
+			leftRotate(x);
+		    }
+		    color[parent[x]] = BLACK;
+		    color[parent[parent[x]]] = RED;
+		    rightRotate(parent[parent[x]]);
+		}
+	    } else {
+		int y = left[xpp];
+		if (color[y] == RED) {
+		    color[xp] = BLACK;
+		    color[y] = BLACK;
+		    color[xpp] = RED;
+		    x = xpp;
+		} else {
+		    if (x == left[xp]) {
+			x = xp;
+			rightRotate(x);
+		    }
+		    color[parent[x]] = BLACK;
+		    color[parent[parent[x]]] = RED;
+		    leftRotate(parent[parent[x]]);
+		}
+	    }
+	}
+	color[root] = BLACK;
+	return inserted;
+    }
+
+
+    public int size() {
+	return this.count;
+    }
+
+
+    public int getLow(int index) {
+	return this.low[index];
+    }
+
+
+    public int getHigh(int index) {
+	return this.high[index];
+    }
+
+
+    // Returns the first matching interval that we can find.
+    public Interval search(Interval interval) {
+	int qLow = interval.getLow();
+	int qHigh = interval.getHigh();
+	int node = root;
+	while (node != NIL &&
+	       ! (low[node] <= qHigh && qLow <= high[node])) {
+	    if (left[node] != NIL && maxHigh[left[node]] >= qLow) {
+		node = left[node];
+	    } else if (right[node] != NIL && minLow[right[node]] <= qHigh) {
+		node = right[node];
+	    } else {
+		return null;
+	    }
+	}
+	if (node == NIL)
+	    return null;
+	return new Interval(low[node], high[node]);
+    }
+
+
+    // Returns all matches as a list of Intervals
+    public List searchAll(Interval interval) {
+	List results = new ArrayList();
+	if (root != NIL) {
+	    _searchAll(interval.getLow(), interval.getHigh(), root, results);
+	}
+	return results;
+    }
+
+
+    private void _searchAll(int qLow, int qHigh, int node, List results) {
+	if (low[node] <= qHigh && qLow <= high[node]) {
+	    results.add(new Interval(low[node], high[node]));
+	}
+	if (left[node] != NIL && maxHigh[left[node]] >= qLow) {
+	    _searchAll(qLow, qHigh, left[node], results);
+	}
+	if (right[node] != NIL && minLow[right[node]] <= qHigh) {
+	    _searchAll(qLow, qHigh, right[node], results);
+	}
+    }
+
+
+
+    // Takes the next free slot, growing the arrays if we've run out.
+    private int allocate(int l, int h) {
+	if (count + 1 == low.length) {
+	    grow();
+	}
+	int x = ++count;
+	low[x] = l;
+	high[x] = h;
+	maxHigh[x] = h;
+	minLow[x] = l;
+	left[x] = NIL;
+	right[x] = NIL;
+	parent[x] = NIL;
+	color[x] = RED;
+	return x;
+    }
+
+
+    private void grow() {
+	int capacity = low.length + (low.length >> 1) + 1;
+	logger.debug("growing to " + capacity + " slots");
+	low = copyOf(low, capacity);
+	high = copyOf(high, capacity);
+	maxHigh = copyOf(maxHigh, capacity);
+	minLow = copyOf(minLow, capacity);
+	left = copyOf(left, capacity);
+	right = copyOf(right, capacity);
+	parent = copyOf(parent, capacity);
+	byte[] newColor = new byte[capacity];
+	System.arraycopy(color, 0, newColor, 0, color.length);
+	color = newColor;
+    }
+
+
+    private static int[] copyOf(int[] array, int capacity) {
+	int[] result = new int[capacity];
+	System.arraycopy(array, 0, result, 0, array.length);
+	return result;
+    }
+
+
+    private void leftRotate(int x) {
+	int y = right[x];
+	right[x] = left[y];
+	if (left[y] != NIL) {
+	    parent[left[y]] = x;
+	}
+	parent[y] = parent[x];
+	if (parent[x] == NIL) {
+	    root = y;
+	} else {
+	    if (left[parent[x]] == x) {
+		left[parent[x]] = y;
+	    } else {
+		right[parent[x]] = y;
+	    }
+	}
+	left[y] = x;
+	parent[x] = y;
+
+	applyUpdate(x);
+    }
+
+
+    private void rightRotate(int x) {
+	int y = left[x];
+	left[x] = right[y];
+	if (right[y] != NIL) {
+	    parent[right[y]] = x;
+	}
+	parent[y] = parent[x];
+	if (parent[x] == NIL) {
+	    root = y;
+	} else {
+	    if (right[parent[x]] == x) {
+		right[parent[x]] = y;
+	    } else {
+		left[parent[x]] = y;
+	    }
+	}
+	right[y] = x;
+	parent[x] = y;
+
+	applyUpdate(x);
+    }
+
+
+    private void treeInsert(int x) {
+	int node = root;
+	int y = NIL;
+	while (node != NIL) {
+	    y = node;
+	    if (low[x] <= low[node]) {
+		node = left[node];
+	    } else {
+		node = right[node];
+	    }
+	}
+	parent[x] = y;
+
+	if (y == NIL) {
+	    root = x;
+	} else {
+	    if (low[x] <= low[y]) {
+		left[y] = x;
+	    } else {
+		right[y] = x;
+	    }
+	}
+
+	applyUpdate(x);
+    }
+
+
+    // Recomputes maxHigh/minLow on the node and its ancestors.
+    private void applyUpdate(int node) {
+	while (node != NIL) {
+	    int l = left[node];
+	    int r = right[node];
+	    int m = high[node];
+	    if (maxHigh[l] > m) { m = maxHigh[l]; }
+	    if (maxHigh[r] > m) { m = maxHigh[r]; }
+	    maxHigh[node] = m;
+
+	    m = low[node];
+	    if (minLow[l] < m) { m = minLow[l]; }
+	    if (minLow[r] < m) { m = minLow[r]; }
+	    minLow[node] = m;
+
+	    node = parent[node];
+	}
+    }
+
+
+
+
+    /**
+     *
+     * Test code: checks the red-black properties and the max/min
+     * fields, as IntervalTree.isValid() does.  This is expensive and
+     * only meant for assertions and testing.
+     */
+    public boolean isValid() {
+	if (color[root] != BLACK) {
+	    logger.warn("root color is wrong");
+	    return false;
+	}
+	if (color[NIL] != BLACK) {
+	    logger.warn("NIL color is wrong");
+	    return false;
+	}
+	if (blackHeight(root) < 0) {
+	    logger.warn("red-black constraints violated");
+	    return false;
+	}
+	return hasCorrectMaxMinFields(root);
+    }
+
+
+    // Returns the black height of the subtree, or -1 if a red node
+    // has a red child or the two sides disagree.
+    private int blackHeight(int node) {
+	if (node == NIL)
+	    return 0;
+	if (color[node] == RED &&
+	    (color[left[node]] == RED || color[right[node]] == RED))
+	    return -1;
+	int leftHeight = blackHeight(left[node]);
+	int rightHeight = blackHeight(right[node]);
+	if (leftHeight < 0 || leftHeight != rightHeight)
+	    return -1;
+	return leftHeight + (color[node] == BLACK ? 1 : 0);
+    }
+
+
+    private boolean hasCorrectMaxMinFields(int node) {
+	if (node == NIL)
+	    return true;
+	int l = left[node];
+	int r = right[node];
+	int realMax = Math.max(high[node], Math.max(maxHigh[l], maxHigh[r]));
+	int realMin = Math.min(low[node], Math.min(minLow[l], minLow[r]));
+	return (maxHigh[node] == realMax &&
+		minLow[node] == realMin &&
+		hasCorrectMaxMinFields(l) &&
+		hasCorrectMaxMinFields(r));
+    }
+}
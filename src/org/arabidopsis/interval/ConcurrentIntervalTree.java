@@ -0,0 +1,157 @@
+package org.arabidopsis.interval;
+
+/**
+ * A thread-safe facade over IntervalTree, guarded by a StampedLock.
+ *
+ * search() and searchAll() first walk the tree as an optimistic read,
+ * holding no lock at all.  That walk checks every link it follows and
+ * gives up after as many nodes as a valid tree could make it visit;
+ * its answer is only used if it finished and validate() shows that no
+ * writer ran meanwhile.  Otherwise the search is done again under the
+ * read lock, as is every forEachOverlap(), so that visitors never see
+ * a torn tree.  Each insert or remove takes the write lock for
+ * itself; insertAll() and bulkLoadUnsorted() take it once for the
+ * whole array.  A change is visible to searches by the time it
+ * returns.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+public class ConcurrentIntervalTree {
+    private final IntervalTree tree;
+    private final StampedLock lock;
+
+
+    public ConcurrentIntervalTree() {
+	this.tree = new IntervalTree();
+	this.lock = new StampedLock();
+    }
+
+
+    public void insert(Interval interval) {
+	long stamp = this.lock.writeLock();
+	try {
+	    this.tree.insert(interval);
+	} finally {
+	    this.lock.unlockWrite(stamp);
+	}
+    }
+
+
+    /**
+     * Inserts all the intervals under a single acquisition of the
+     * write lock.
+     */
+    public void insertAll(Interval[] intervals) {
+	long stamp = this.lock.writeLock();
+	try {
+	    for (int i = 0; i < intervals.length; i++) {
+		this.tree.insert(intervals[i]);
+	    }
+	} finally {
+	    this.lock.unlockWrite(stamp);
+	}
+    }
+
+
+    /**
+     * Bulk-loads the intervals, in any order, under a single
+     * acquisition of the write lock; see IntervalTree.bulkLoadUnsorted().
+     */
+    public void bulkLoadUnsorted(Interval[] intervals) {
+	long stamp = this.lock.writeLock();
+	try {
+	    this.tree.bulkLoadUnsorted(intervals);
+	} finally {
+	    this.lock.unlockWrite(stamp);
+	}
+    }
+
+
+    public boolean remove(Interval interval) {
+	long stamp = this.lock.writeLock();
+	try {
+	    return this.tree.remove(interval);
+	} finally {
+	    this.lock.unlockWrite(stamp);
+	}
+    }
+
+
+    public int size() {
+	// Reading the root's count cannot fail even mid-rotation, and
+	// validate() throws away a stale one.
+	long stamp = this.lock.tryOptimisticRead();
+	int size = this.tree.size();
+	if (this.lock.validate(stamp))
+	    return size;
+	stamp = this.lock.readLock();
+	try {
+	    return this.tree.size();
+	} finally {
+	    this.lock.unlockRead(stamp);
+	}
+    }
+
+
+    // Returns the first matching interval that we can find.
+    public Interval search(Interval interval) {
+	long stamp = this.lock.tryOptimisticRead();
+	if (stamp != 0) {
+	    Interval[] found = new Interval[1];
+	    if (this.tree.racySearch(interval.getLow(), interval.getHigh(),
+				     found, pathLimit(this.tree.size())) &&
+		this.lock.validate(stamp))
+		return found[0];
+	}
+	stamp = this.lock.readLock();
+	try {
+	    return this.tree.search(interval);
+	} finally {
+	    this.lock.unlockRead(stamp);
+	}
+    }
+
+
+    // Returns all matches as a list of Intervals
+    public List searchAll(Interval interval) {
+	long stamp = this.lock.tryOptimisticRead();
+	if (stamp != 0) {
+	    List results = new ArrayList();
+	    if (this.tree.racySearchAll(interval.getLow(), interval.getHigh(),
+					results, this.tree.size()) &&
+		this.lock.validate(stamp))
+		return results;
+	}
+	stamp = this.lock.readLock();
+	try {
+	    return this.tree.searchAll(interval);
+	} finally {
+	    this.lock.unlockRead(stamp);
+	}
+    }
+
+
+    // A red-black tree of n nodes is at most 2 log2(n + 1) high, so a
+    // single root-to-leaf walk visits no more nodes than this.
+    private static int pathLimit(int n) {
+	return 2 * (32 - Integer.numberOfLeadingZeros(n + 1)) + 1;
+    }
+
+
+    /**
+     * Hands every interval overlapping [low, high] to the visitor,
+     * under the read lock.  Returns false if the visitor stopped the
+     * search early.
+     */
+    public boolean forEachOverlap(int low, int high, IntervalVisitor visitor) {
+	long stamp = this.lock.readLock();
+	try {
+	    return this.tree.forEachOverlap(low, high, visitor);
+	} finally {
+	    this.lock.unlockRead(stamp);
+	}
+    }
+}
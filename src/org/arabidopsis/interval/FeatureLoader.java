@@ -0,0 +1,260 @@
+package org.arabidopsis.interval;
+
+/**
+ * Streams BED or GFF files into a GenomeIntervalIndex.
+ *
+ * Lines are parsed straight out of the bytes read from the file's
+ * channel: coordinates are parsed in place, and a contig name only
+ * becomes a String when it differs from the previous line's.  The
+ * one object made per feature is its Interval.  Once the file has
+ * been read the index is built; contigs whose features arrived in
+ * order of start are bulk loaded without sorting.
+ *
+ * Both formats are read as 1-based closed intervals.  A BED line's
+ * 0-based half-open [start, end) becomes [start + 1, end]; a
+ * zero-length BED feature becomes the single base after it.  Fields
+ * must be separated by tabs.  Blank lines, '#' comments and BED
+ * "track" and "browser" lines are skipped.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.log4j.Logger;
+
+public class FeatureLoader {
+    public static final int BED = 1;
+    public static final int GFF = 2;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final GenomeIntervalIndex index;
+    private final Logger logger;
+
+    // The contig of the last feature, so runs of lines on the same
+    // contig need no String or hash lookup.
+    private byte[] lastContig;
+    private int lastContigLength;
+    private int lastContigId;
+
+    // Start and end offsets of the fields on the current line.
+    private final int[] bounds = new int[10];
+
+
+    /**
+     * What a call to load() read, and how fast.
+     */
+    public static class Stats {
+	public final long lines;
+	public final long features;
+	public final long nanos;
+
+	Stats(long lines, long features, long nanos) {
+	    this.lines = lines;
+	    this.features = features;
+	    this.nanos = nanos;
+	}
+
+	public double linesPerSecond() {
+	    return (this.nanos == 0 ? 0 : this.lines * 1e9 / this.nanos);
+	}
+
+	public String toString() {
+	    return (this.lines + " lines, " + this.features + " features in " +
+		    (this.nanos / 1000000) + " ms (" +
+		    (long) linesPerSecond() + " lines/s)");
+	}
+    }
+
+
+    public FeatureLoader(GenomeIntervalIndex index) {
+	this.index = index;
+	this.logger = Logger.getLogger(this.getClass());
+	this.lastContig = new byte[64];
+	this.lastContigLength = -1;
+	this.lastContigId = -1;
+    }
+
+
+    /**
+     * Reads every feature in the file into the index, then builds it.
+     * format is BED or GFF.
+     */
+    public Stats load(File file, int format) throws IOException {
+	if (format != BED && format != GFF)
+	    throw new IllegalArgumentException("unknown format " + format);
+
+	long start = System.nanoTime();
+	long lines = 0;
+	long features = 0;
+
+	byte[] buf = new byte[BUFFER_SIZE];
+	int filled = 0;
+	FileInputStream in = new FileInputStream(file);
+	try {
+	    FileChannel channel = in.getChannel();
+	    boolean eof = false;
+	    while (! eof) {
+		if (filled == buf.length) {
+		    // A single line longer than the buffer.
+		    byte[] bigger = new byte[buf.length * 2];
+		    System.arraycopy(buf, 0, bigger, 0, filled);
+		    buf = bigger;
+		}
+		int n = channel.read(ByteBuffer.wrap(buf, filled,
+						     buf.length - filled));
+		if (n < 0) {
+		    eof = true;
+		    if (filled == 0)
+			break;
+		    // Treat the last, unterminated line as complete.
+		    buf = ensureRoom(buf, filled);
+		    buf[filled++] = '\n';
+		} else {
+		    filled += n;
+		}
+
+		int lineStart = 0;
+		for (int i = 0; i < filled; i++) {
+		    if (buf[i] != '\n')
+			continue;
+		    lines++;
+		    if (parseLine(buf, lineStart, i, format, lines))
+			features++;
+		    lineStart = i + 1;
+		}
+		System.arraycopy(buf, lineStart, buf, 0, filled - lineStart);
+		filled -= lineStart;
+	    }
+	} finally {
+	    in.close();
+	}
+
+	this.index.build();
+	Stats stats = new Stats(lines, features, System.nanoTime() - start);
+	this.logger.info("loaded " + file + ": " + stats);
+	return stats;
+    }
+
+
+    private static byte[] ensureRoom(byte[] buf, int filled) {
+	if (filled < buf.length)
+	    return buf;
+	byte[] bigger = new byte[buf.length + 1];
+	System.arraycopy(buf, 0, bigger, 0, filled);
+	return bigger;
+    }
+
+
+    // Parses the line in buf[from, to).  Returns true if it held a
+    // feature.
+    private boolean parseLine(byte[] buf, int from, int to, int format,
+			      long lineNumber) throws IOException {
+	if (to > from && buf[to - 1] == '\r')
+	    to--;
+	if (to == from || buf[from] == '#')
+	    return false;
+	if (format == BED &&
+	    (startsWith(buf, from, to, "track") ||
+	     startsWith(buf, from, to, "browser")))
+	    return false;
+
+	// Find the fields we need: the contig, then start and end.
+	int startField = (format == BED ? 1 : 3);
+	int[] bounds = this.bounds;
+	int field = 0;
+	bounds[0] = from;
+	for (int i = from; i < to && field < startField + 2; i++) {
+	    if (buf[i] == '\t') {
+		bounds[2 * field + 1] = i;
+		field++;
+		if (field < startField + 2)
+		    bounds[2 * field] = i + 1;
+	    }
+	}
+	if (field < startField + 2) {
+	    if (field < startField + 1)
+		throw new IOException("too few fields on line " + lineNumber);
+	    bounds[2 * field + 1] = to;
+	}
+
+	int start = parseInt(buf, bounds[2 * startField],
+			     bounds[2 * startField + 1], lineNumber);
+	int end = parseInt(buf, bounds[2 * startField + 2],
+			   bounds[2 * startField + 3], lineNumber);
+	int low, high;
+	if (format == BED) {
+	    low = start + 1;
+	    high = Math.max(end, low);
+	} else {
+	    low = start;
+	    high = end;
+	}
+	if (high < low)
+	    throw new IOException("end before start on line " + lineNumber);
+
+	int contig = contigId(buf, bounds[0], bounds[1]);
+	this.index.add(contig, new Interval(low, high));
+	return true;
+    }
+
+
+    private int contigId(byte[] buf, int from, int to) {
+	int length = to - from;
+	if (length == this.lastContigLength) {
+	    int i = 0;
+	    while (i < length && buf[from + i] == this.lastContig[i]) {
+		i++;
+	    }
+	    if (i == length)
+		return this.lastContigId;
+	}
+	if (length > this.lastContig.length)
+	    this.lastContig = new byte[length];
+	System.arraycopy(buf, from, this.lastContig, 0, length);
+	this.lastContigLength = length;
+	this.lastContigId = this.index.contigId(latin1(buf, from, length));
+	return this.lastContigId;
+    }
+
+
+    private static String latin1(byte[] buf, int from, int length) {
+	char[] chars = new char[length];
+	for (int i = 0; i < length; i++) {
+	    chars[i] = (char) (buf[from + i] & 0xff);
+	}
+	return new String(chars);
+    }
+
+
+    private static boolean startsWith(byte[] buf, int from, int to,
+				      String prefix) {
+	if (to - from < prefix.length())
+	    return false;
+	for (int i = 0; i < prefix.length(); i++) {
+	    if (buf[from + i] != prefix.charAt(i))
+		return false;
+	}
+	return true;
+    }
+
+
+    private static int parseInt(byte[] buf, int from, int to,
+				long lineNumber) throws IOException {
+	if (from >= to)
+	    throw new IOException("missing coordinate on line " + lineNumber);
+	long value = 0;
+	for (int i = from; i < to; i++) {
+	    int digit = buf[i] - '0';
+	    if (digit < 0 || digit > 9)
+		throw new IOException("bad coordinate on line " + lineNumber);
+	    value = value * 10 + digit;
+	    if (value > Integer.MAX_VALUE)
+		throw new IOException("coordinate too large on line " +
+				      lineNumber);
+	}
+	return (int) value;
+    }
+}
@@ -3,9 +3,6 @@ package org.arabidopsis.interval;
 import java.util.List;
 import java.util.ArrayList;
 
-import java.util.Map;
-import java.util.WeakHashMap;
-
 
 
 
@@ -20,84 +17,209 @@ public class FlankingFinder {
     private RbTree lows;
     private RbTree highs;
 
-    private Map lowRbNodeToObj;
-    private Map highRbNodeToObj;
-
     public FlankingFinder() {
 	this.lows = new RbTree();
 	this.highs = new RbTree();
-	this.lowRbNodeToObj = new WeakHashMap();
-	this.highRbNodeToObj = new WeakHashMap();
+    }
+
+
+    // An RbNode that carries the object it was added for, so a hit
+    // needs no lookup on the side.
+    private static class Node extends RbNode {
+	final Object obj;
+
+	Node(int key, Object obj) {
+	    super(key);
+	    this.obj = obj;
+	}
     }
 
 
     public void add(Object obj, int low, int high) {
-	RbNode lowNode = new RbNode(low);
-	RbNode highNode = new RbNode(high);
-	this.lows.insert(lowNode);
-	this.highs.insert(highNode);
+	this.lows.insert(new Node(low, obj));
+	this.highs.insert(new Node(high, obj));
+    }
+
+
+
+    /**
+     * Removes an object previously added with the same low and high.
+     * Returns true if it was found.
+     */
+    public boolean remove(Object obj, int low, int high) {
+	RbNode lowNode = find(this.lows.root, low, obj);
+	RbNode highNode = find(this.highs.root, high, obj);
+	if (lowNode.isNull() || highNode.isNull())
+	    return false;
+
+	this.lows.delete(lowNode);
+	this.highs.delete(highNode);
+	return true;
+    }
 
-	this.lowRbNodeToObj.put(lowNode, obj);
-	this.highRbNodeToObj.put(highNode, obj);
+
+    // Finds a node with the given key that holds obj.  Equal keys
+    // can be on either side of a matching node, so we look at both.
+    private RbNode find(RbNode node, int key, Object obj) {
+	while (! node.isNull()) {
+	    if (key < node.key) {
+		node = node.left;
+	    } else if (key > node.key) {
+		node = node.right;
+	    } else {
+		Object other = ((Node) node).obj;
+		if (obj == null ? other == null : obj.equals(other))
+		    return node;
+		RbNode found = find(node.left, key, obj);
+		if (! found.isNull())
+		    return found;
+		node = node.right;
+	    }
+	}
+	return node;
     }
 
 
 
+    /**
+     * Returns up to n objects whose high is less than pos, nearest
+     * first.  Takes O(log n + n): one descent lands on the nearest
+     * qualifying node, however many share a coordinate.
+     */
     public List flankingLeft(int pos, int n) {
-	if (this.highs.root.isNull())
-	    return new ArrayList();
+	return collectLeft(floor(pos), n);
+    }
 
-	RbNode node = this.highs.root;
-	RbNode lastNode = node;
-	while (node != RbNode.NIL) {
-	    if (pos <= node.key)  {
-		lastNode = node;
-		node = node.left; 
+
+    /**
+     * Returns up to n objects whose low is greater than pos, nearest
+     * first.
+     */
+    public List flankingRight(int pos, int n) {
+	return collectRight(ceiling(pos), n);
+    }
+
+
+    /**
+     * flankingLeft() for many positions at once, returning one list
+     * per position.  When a position is at or after the one before
+     * it, the search starts from where the last one landed, so a
+     * sorted run of nearby positions costs little more than the
+     * results themselves.
+     */
+    public List[] flankingLeft(int[] positions, int n) {
+	List[] results = new List[positions.length];
+	RbNode cursor = RbNode.NIL;
+	for (int i = 0; i < positions.length; i++) {
+	    int pos = positions[i];
+	    if (i > 0 && positions[i-1] <= pos) {
+		cursor = advanceFloor(cursor, pos);
 	    } else {
-		lastNode = node;
-		node = node.right; 
+		cursor = floor(pos);
 	    }
+	    results[i] = collectLeft(cursor, n);
 	}
+	return results;
+    }
 
-	while (lastNode != RbNode.NIL && lastNode.key >= pos) {
-	    lastNode = this.highs.predecessor(lastNode);
-	}
 
-	List results = new ArrayList();
-	for (int i = 0; i < n && lastNode != RbNode.NIL; i++) {
-	    results.add(highRbNodeToObj.get(lastNode));
-	    lastNode = this.highs.predecessor(lastNode);
+    /**
+     * flankingRight() for many positions at once, returning one list
+     * per position, reusing the search position like the
+     * flankingLeft() batch.
+     */
+    public List[] flankingRight(int[] positions, int n) {
+	List[] results = new List[positions.length];
+	RbNode cursor = RbNode.NIL;
+	for (int i = 0; i < positions.length; i++) {
+	    int pos = positions[i];
+	    if (i > 0 && positions[i-1] <= pos) {
+		cursor = advanceCeiling(cursor, pos);
+	    } else {
+		cursor = ceiling(pos);
+	    }
+	    results[i] = collectRight(cursor, n);
 	}
 	return results;
     }
 
 
+    // How far a batch cursor walks before a fresh descent is cheaper.
+    private static final int CURSOR_STEPS = 8;
 
 
-    public List flankingRight(int pos, int n) {
-	if (this.lows.root.isNull())
-	    return new ArrayList();
+    // The last node of highs, in order, whose key is below pos.
+    private RbNode floor(int pos) {
+	RbNode result = this.highs.NIL;
+	RbNode node = this.highs.root;
+	while (! node.isNull()) {
+	    if (node.key < pos) {
+		result = node;
+		node = node.right;
+	    } else {
+		node = node.left;
+	    }
+	}
+	return result;
+    }
 
+
+    // The first node of lows, in order, whose key is above pos.
+    private RbNode ceiling(int pos) {
+	RbNode result = this.lows.NIL;
 	RbNode node = this.lows.root;
-	RbNode lastNode = node;
-	while (node != RbNode.NIL) {
-	    if (pos <= node.key)  {
-		lastNode = node;
-		node = node.left; 
+	while (! node.isNull()) {
+	    if (node.key > pos) {
+		result = node;
+		node = node.left;
 	    } else {
-		lastNode = node;
-		node = node.right; 
+		node = node.right;
 	    }
 	}
+	return result;
+    }
+
 
-	while (lastNode != RbNode.NIL && lastNode.key <= pos) {
-	    lastNode = this.lows.successor(lastNode);
+    // floor(pos), given the floor of an earlier, smaller position.
+    private RbNode advanceFloor(RbNode cursor, int pos) {
+	if (cursor.isNull())
+	    return floor(pos);
+	for (int i = 0; i < CURSOR_STEPS; i++) {
+	    RbNode next = this.highs.successor(cursor);
+	    if (next.isNull() || next.key >= pos)
+		return cursor;
+	    cursor = next;
 	}
+	return floor(pos);
+    }
+
+
+    // ceiling(pos), given the ceiling of an earlier, smaller position.
+    private RbNode advanceCeiling(RbNode cursor, int pos) {
+	for (int i = 0; i < CURSOR_STEPS; i++) {
+	    if (cursor.isNull() || cursor.key > pos)
+		return cursor;
+	    cursor = this.lows.successor(cursor);
+	}
+	return ceiling(pos);
+    }
+
+
+    private List collectLeft(RbNode node, int n) {
+	List results = new ArrayList();
+	for (int i = 0; i < n && (! node.isNull()); i++) {
+	    results.add(((Node) node).obj);
+	    node = this.highs.predecessor(node);
+	}
+	return results;
+    }
+
 
+    private List collectRight(RbNode node, int n) {
 	List results = new ArrayList();
-	for (int i = 0; i < n && lastNode != RbNode.NIL; i++) {
-	    results.add(lowRbNodeToObj.get(lastNode));
-	    lastNode = this.lows.successor(lastNode);
+	for (int i = 0; i < n && (! node.isNull()); i++) {
+	    results.add(((Node) node).obj);
+	    node = this.lows.successor(node);
 	}
 	return results;
     }
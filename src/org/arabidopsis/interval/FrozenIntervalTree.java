@@ -0,0 +1,163 @@
+package org.arabidopsis.interval;
+
+/**
+ * An immutable snapshot of an IntervalTree, made by
+ * IntervalTree.freeze().
+ *
+ * The tree is laid out implicitly in BFS (Eytzinger) order: the root
+ * is at index 0 and the children of index k are at 2k+1 and 2k+2.  It
+ * is a complete binary search tree on the low endpoints, stored as
+ * parallel arrays of low, high and maxHigh with no pointers at all.
+ * The top levels of the tree sit next to each other in memory, which
+ * keeps the first steps of every query in cache.
+ *
+ * Interval objects are not kept: queries hand back fresh Intervals
+ * built from the stored endpoints.
+ */
+
+import java.util.List;
+import java.util.ArrayList;
+
+public class FrozenIntervalTree {
+    final int[] lows;
+    final int[] highs;
+    final int[] maxHighs;
+
+
+    /**
+     * Builds the snapshot from intervals sorted by low endpoint.
+     */
+    FrozenIntervalTree(Interval[] sorted) {
+	int n = sorted.length;
+	this.lows = new int[n];
+	this.highs = new int[n];
+	this.maxHighs = new int[n];
+
+	int[] order = eytzingerOrder(n);
+	for (int k = 0; k < n; k++) {
+	    this.lows[k] = sorted[order[k]].getLow();
+	    this.highs[k] = sorted[order[k]].getHigh();
+	}
+
+	for (int k = n - 1; k >= 0; k--) {
+	    int m = this.highs[k];
+	    int left = 2 * k + 1;
+	    if (left < n && this.maxHighs[left] > m)
+		m = this.maxHighs[left];
+	    if (left + 1 < n && this.maxHighs[left + 1] > m)
+		m = this.maxHighs[left + 1];
+	    this.maxHighs[k] = m;
+	}
+    }
+
+
+    /**
+     * Returns, for each slot of an implicit tree of n nodes, the
+     * position in sorted order of the element that belongs there.
+     */
+    static int[] eytzingerOrder(int n) {
+	int[] order = new int[n];
+	fill(order, 0, new int[1]);
+	return order;
+    }
+
+
+    // Inorder walk of the implicit tree, handing out sorted positions.
+    private static void fill(int[] order, int k, int[] next) {
+	if (k >= order.length)
+	    return;
+	fill(order, 2 * k + 1, next);
+	order[k] = next[0]++;
+	fill(order, 2 * k + 2, next);
+    }
+
+
+    public int size() {
+	return this.lows.length;
+    }
+
+
+    // Returns the first matching interval that we can find.
+    public Interval search(Interval interval) {
+	int qLow = interval.getLow();
+	int qHigh = interval.getHigh();
+	int n = this.lows.length;
+	int k = 0;
+	while (k < n) {
+	    if (this.lows[k] <= qHigh && qLow <= this.highs[k])
+		return new Interval(this.lows[k], this.highs[k]);
+	    int left = 2 * k + 1;
+	    if (left < n && this.maxHighs[left] >= qLow) {
+		k = left;
+	    } else if (this.lows[k] <= qHigh) {
+		// Everything on the right starts at or after lows[k].
+		k = left + 1;
+	    } else {
+		return null;
+	    }
+	}
+	return null;
+    }
+
+
+    // Returns all matches as a list of Intervals
+    public List searchAll(Interval interval) {
+	List results = new ArrayList();
+	if (this.lows.length > 0) {
+	    _searchAll(interval.getLow(), interval.getHigh(), 0, results);
+	}
+	return results;
+    }
+
+
+    private void _searchAll(int qLow, int qHigh, int k, List results) {
+	int n = this.lows.length;
+	if (this.lows[k] <= qHigh && qLow <= this.highs[k]) {
+	    results.add(new Interval(this.lows[k], this.highs[k]));
+	}
+	int left = 2 * k + 1;
+	if (left < n && this.maxHighs[left] >= qLow) {
+	    _searchAll(qLow, qHigh, left, results);
+	}
+	if (left + 1 < n && this.lows[k] <= qHigh &&
+	    this.maxHighs[left + 1] >= qLow) {
+	    _searchAll(qLow, qHigh, left + 1, results);
+	}
+    }
+
+
+    public boolean searchAll(Interval interval, IntervalVisitor visitor) {
+	return forEachOverlap(interval.getLow(), interval.getHigh(), visitor);
+    }
+
+
+    /**
+     * Hands every interval overlapping [low, high] to the visitor.
+     * Returns false if the visitor stopped the search early.
+     */
+    public boolean forEachOverlap(int low, int high, IntervalVisitor visitor) {
+	if (this.lows.length == 0)
+	    return true;
+	return _forEachOverlap(low, high, 0, visitor);
+    }
+
+
+    private boolean _forEachOverlap(int qLow, int qHigh, int k,
+				    IntervalVisitor visitor) {
+	int n = this.lows.length;
+	if (this.lows[k] <= qHigh && qLow <= this.highs[k]) {
+	    if (! visitor.visit(new Interval(this.lows[k], this.highs[k])))
+		return false;
+	}
+	int left = 2 * k + 1;
+	if (left < n && this.maxHighs[left] >= qLow) {
+	    if (! _forEachOverlap(qLow, qHigh, left, visitor))
+		return false;
+	}
+	if (left + 1 < n && this.lows[k] <= qHigh &&
+	    this.maxHighs[left + 1] >= qLow) {
+	    return _forEachOverlap(qLow, qHigh, left + 1, visitor);
+	}
+	return true;
+    }
+}
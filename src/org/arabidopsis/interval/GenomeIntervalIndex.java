@@ -0,0 +1,281 @@
+package org.arabidopsis.interval;
+
+/**
+ * Interval trees for a whole genome, one IntervalTree per contig.
+ *
+ * Contig names are mapped once to small integer ids with contigId();
+ * queries then take the id, so looking up the right tree is an array
+ * access rather than a string hash.  The String forms of the query
+ * methods are conveniences that do the lookup for you.
+ *
+ * Loading happens in two steps: add() collects intervals per contig,
+ * and build() bulk loads every contig's tree in parallel.  Each tree
+ * is independent, with its own NIL sentinel, so the contigs can be
+ * built on separate threads.  insert() adds to a built tree directly.
+ * The thread-safety of searches is the same as for IntervalTree.
+ */
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class GenomeIntervalIndex {
+    private final Map contigIds;	// String -> Integer
+    private String[] names;
+    private IntervalTree[] trees;
+    private List[] pending;		// Intervals waiting for build()
+    private boolean[] pendingSorted;	// Whether pending is in order of low
+    private int contigCount;
+
+
+    public GenomeIntervalIndex() {
+	this.contigIds = new HashMap();
+	this.names = new String[16];
+	this.trees = new IntervalTree[16];
+	this.pending = new List[16];
+	this.pendingSorted = new boolean[16];
+	this.contigCount = 0;
+    }
+
+
+    /**
+     * Returns the id of the named contig, assigning the next free id
+     * if the name has not been seen before.
+     */
+    public int contigId(String name) {
+	Integer id = (Integer) this.contigIds.get(name);
+	if (id != null)
+	    return id.intValue();
+
+	if (this.contigCount == this.names.length) {
+	    int capacity = this.names.length * 2;
+	    String[] newNames = new String[capacity];
+	    IntervalTree[] newTrees = new IntervalTree[capacity];
+	    List[] newPending = new List[capacity];
+	    boolean[] newPendingSorted = new boolean[capacity];
+	    System.arraycopy(this.names, 0, newNames, 0, this.contigCount);
+	    System.arraycopy(this.trees, 0, newTrees, 0, this.contigCount);
+	    System.arraycopy(this.pending, 0, newPending, 0, this.contigCount);
+	    System.arraycopy(this.pendingSorted, 0, newPendingSorted, 0,
+			     this.contigCount);
+	    this.names = newNames;
+	    this.trees = newTrees;
+	    this.pending = newPending;
+	    this.pendingSorted = newPendingSorted;
+	}
+	int newId = this.contigCount++;
+	this.names[newId] = name;
+	this.trees[newId] = new IntervalTree();
+	this.pending[newId] = new ArrayList();
+	this.pendingSorted[newId] = true;
+	this.contigIds.put(name, Integer.valueOf(newId));
+	return newId;
+    }
+
+
+    /**
+     * Returns the id of the named contig, or -1 if there is none.
+     */
+    public int lookupContig(String name) {
+	Integer id = (Integer) this.contigIds.get(name);
+	return (id == null ? -1 : id.intValue());
+    }
+
+
+    public String contigName(int contigId) {
+	checkContig(contigId);
+	return this.names[contigId];
+    }
+
+
+    public int contigCount() {
+	return this.contigCount;
+    }
+
+
+    /**
+     * Returns the tree holding a contig's intervals.
+     */
+    public IntervalTree tree(int contigId) {
+	checkContig(contigId);
+	return this.trees[contigId];
+    }
+
+
+    public void add(String contig, Interval interval) {
+	add(contigId(contig), interval);
+    }
+
+
+    /**
+     * Queues an interval for the next build().  It is not visible to
+     * queries until then.  If a contig's intervals arrive in order of
+     * low endpoint, build() skips sorting them.
+     */
+    public void add(int contigId, Interval interval) {
+	checkContig(contigId);
+	List queue = this.pending[contigId];
+	if (this.pendingSorted[contigId] && ! queue.isEmpty() &&
+	    ((Interval) queue.get(queue.size() - 1)).getLow() > interval.getLow()) {
+	    this.pendingSorted[contigId] = false;
+	}
+	queue.add(interval);
+    }
+
+
+    /**
+     * Adds an interval to an already built contig right away.
+     */
+    public void insert(int contigId, Interval interval) {
+	checkContig(contigId);
+	this.trees[contigId].insert(interval);
+    }
+
+
+    public void build() {
+	build(ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Bulk loads everything queued by add() into the contig trees,
+     * one task per contig.
+     */
+    public void build(ForkJoinPool pool) {
+	List tasks = new ArrayList();
+	for (int i = 0; i < this.contigCount; i++) {
+	    if (this.pending[i].isEmpty())
+		continue;
+	    final IntervalTree tree = this.trees[i];
+	    final Interval[] intervals = (Interval[])
+		this.pending[i].toArray(new Interval[this.pending[i].size()]);
+	    final boolean sorted = this.pendingSorted[i];
+	    this.pending[i] = new ArrayList();
+	    this.pendingSorted[i] = true;
+	    tasks.add(new RecursiveAction() {
+		    protected void compute() {
+			if (sorted) {
+			    tree.bulkLoad(intervals);
+			} else {
+			    tree.bulkLoadUnsorted(intervals);
+			}
+		    }
+		});
+	}
+	invokeAll(pool, tasks);
+    }
+
+
+    public int size() {
+	int size = 0;
+	for (int i = 0; i < this.contigCount; i++) {
+	    size += this.trees[i].size();
+	}
+	return size;
+    }
+
+
+    public Interval search(int contigId, Interval interval) {
+	checkContig(contigId);
+	return this.trees[contigId].search(interval);
+    }
+
+
+    public List searchAll(int contigId, Interval interval) {
+	checkContig(contigId);
+	return this.trees[contigId].searchAll(interval);
+    }
+
+
+    public boolean forEachOverlap(int contigId, int low, int high,
+				  IntervalVisitor visitor) {
+	checkContig(contigId);
+	return this.trees[contigId].forEachOverlap(low, high, visitor);
+    }
+
+
+    // Returns null if there is no such contig.
+    public Interval search(String contig, Interval interval) {
+	int id = lookupContig(contig);
+	return (id < 0 ? null : search(id, interval));
+    }
+
+
+    // Returns an empty list if there is no such contig.
+    public List searchAll(String contig, Interval interval) {
+	int id = lookupContig(contig);
+	return (id < 0 ? new ArrayList() : searchAll(id, interval));
+    }
+
+
+    /**
+     * Answers queries spread over any number of contigs.  The queries
+     * are grouped by contig, and each group runs as a parallel batch
+     * against its tree, so several contigs are searched at once.
+     * Returns one list of matches per query, in input order.
+     */
+    public List[] searchAllBatch(int[] contigIds, Interval[] queries,
+				 ForkJoinPool pool) {
+	if (contigIds.length != queries.length)
+	    throw new IllegalArgumentException
+		("need one contig id per query");
+
+	int[] counts = new int[this.contigCount];
+	for (int i = 0; i < contigIds.length; i++) {
+	    checkContig(contigIds[i]);
+	    counts[contigIds[i]]++;
+	}
+	int[][] positions = new int[this.contigCount][];
+	Interval[][] groups = new Interval[this.contigCount][];
+	for (int c = 0; c < this.contigCount; c++) {
+	    positions[c] = new int[counts[c]];
+	    groups[c] = new Interval[counts[c]];
+	    counts[c] = 0;
+	}
+	for (int i = 0; i < contigIds.length; i++) {
+	    int c = contigIds[i];
+	    positions[c][counts[c]] = i;
+	    groups[c][counts[c]] = queries[i];
+	    counts[c]++;
+	}
+
+	List[][] groupResults = new List[this.contigCount][];
+	List tasks = new ArrayList();
+	for (int c = 0; c < this.contigCount; c++) {
+	    if (groups[c].length == 0)
+		continue;
+	    groupResults[c] = new List[groups[c].length];
+	    tasks.add(this.trees[c].batchTask(groups[c], groupResults[c]));
+	}
+	invokeAll(pool, tasks);
+
+	List[] results = new List[queries.length];
+	for (int c = 0; c < this.contigCount; c++) {
+	    for (int j = 0; j < positions[c].length; j++) {
+		results[positions[c][j]] = groupResults[c][j];
+	    }
+	}
+	return results;
+    }
+
+
+    private static void invokeAll(ForkJoinPool pool, final List tasks) {
+	if (tasks.isEmpty())
+	    return;
+	pool.invoke(new RecursiveAction() {
+		protected void compute() {
+		    invokeAll(tasks);
+		}
+	    });
+    }
+
+
+    private void checkContig(int contigId) {
+	if (contigId < 0 || contigId >= this.contigCount)
+	    throw new IllegalArgumentException
+		("no contig with id " + contigId);
+    }
+}
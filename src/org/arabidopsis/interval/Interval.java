@@ -25,7 +25,7 @@ public class Interval implements Comparable {
 
 
     public int hashCode() {
-	return low;
+	return 31 * this.low + this.high;
     }
 
 
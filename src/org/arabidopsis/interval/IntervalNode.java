@@ -0,0 +1,53 @@
+package org.arabidopsis.interval;
+
+
+/**
+ * An RbNode that carries its own interval, and the value stored with
+ * it, if any.  The endpoints and the augmented max/min of the subtree
+ * rooted here are kept as primitive fields so that IntervalTree can
+ * read them directly while searching.  The node itself is the Entry
+ * handed back by IntervalTree's entry queries.
+ */
+public class IntervalNode extends RbNode implements IntervalTree.Entry {
+    public Interval interval;
+    public Object value;
+    public int low;
+    public int high;
+    public int maxHigh;
+    public int minLow;
+
+
+    public IntervalNode(Interval interval) {
+	this(interval, null);
+    }
+
+
+    public IntervalNode(Interval interval, Object value) {
+	super(interval.getLow());
+	this.value = value;
+	this.interval = interval;
+	this.low = interval.getLow();
+	this.high = interval.getHigh();
+	this.maxHigh = this.high;
+	this.minLow = this.low;
+    }
+
+
+    // Builds a NIL sentinel whose max/min never win a comparison, so
+    // the statistic update can read them like any other node's.
+    IntervalNode() {
+	super();
+	this.maxHigh = Integer.MIN_VALUE;
+	this.minLow = Integer.MAX_VALUE;
+    }
+
+
+    public Interval getInterval() {
+	return this.interval;
+    }
+
+
+    public Object getValue() {
+	return this.value;
+    }
+}
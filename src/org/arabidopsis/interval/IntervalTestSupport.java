@@ -0,0 +1,38 @@
+package org.arabidopsis.interval;
+
+import java.util.List;
+import java.util.Collections;
+
+
+// Fixtures and helpers shared by the test cases.  Not a TestCase
+// itself, so TestAll leaves it alone.
+final class IntervalTestSupport {
+    private IntervalTestSupport() {
+    }
+
+
+    // The example intervals from CLR's "Introduction to Algorithms",
+    // in the order the tests insert them.  A fresh array every call.
+    static Interval[] clrIntervals() {
+	return new Interval[] {
+	    new Interval(0, 3),
+	    new Interval(5, 8),
+	    new Interval(6, 10),
+	    new Interval(8, 9),
+	    new Interval(15, 23),
+	    new Interval(16, 21),
+	    new Interval(17, 19),
+	    new Interval(19, 20),
+	    new Interval(25, 30),
+	    new Interval(26, 26)
+	};
+    }
+
+
+    // Sorts the list in place, so results from any traversal order
+    // can be compared with assertEquals().  Returns the same list.
+    static List sorted(List intervals) {
+	Collections.sort(intervals);
+	return intervals;
+    }
+}
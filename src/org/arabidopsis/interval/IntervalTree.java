@@ -2,46 +2,242 @@ package org.arabidopsis.interval;
 
 /** An implementation of an interval tree, following the explanation.
  * from CLR.
+ *
+ * Searching never modifies the tree.  Once the tree has been safely
+ * published to other threads (for example by handing it to an
+ * Executor or a ForkJoinPool task), any number of threads may search
+ * it at the same time, provided none of them inserts, removes or
+ * bulk loads while they do.
  */
 
 
-import java.util.WeakHashMap;
-import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import org.apache.log4j.Logger;
 
-public class IntervalTree {
+public class IntervalTree<V> {
     private StatisticUpdate updater;
     private RbTree tree;
-
-    private Map intervals;
-    private Map max;
-    private Map min;
+    // The high endpoints, keyed and counted like the lows in tree,
+    // for countOverlaps().  Null unless enableOverlapCounts() was
+    // called; from then on every change to tree is made here too.
+    private RbTree highs;
 
     private Logger logger;
 
 
     public IntervalTree() {
 	this.updater = new IntervalTreeStatisticUpdate();
-	this.tree = new RbTree(this.updater);
+	this.tree = new RbTree(this.updater, new IntervalNode());
 
 	this.logger = Logger.getLogger(this.getClass());
+    }
 
-	this.intervals = new WeakHashMap();
-	this.intervals.put(RbNode.NIL, null);
 
-	this.max = new WeakHashMap();
-	this.max.put(RbNode.NIL, new Integer(Integer.MIN_VALUE));
-	this.min = new WeakHashMap();
-	this.min.put(RbNode.NIL, new Integer(Integer.MAX_VALUE));
+    public void insert(Interval interval) {
+	this.tree.insert(new IntervalNode(interval));
+	if (this.highs != null)
+	    this.highs.insert(new RbNode(interval.getHigh()));
     }
 
 
-    public void insert(Interval interval) {
-	RbNode node = new RbNode(interval.getLow());
-	this.intervals.put(node, interval);
-	this.tree.insert(node);
+    /**
+     * Adds an interval together with a value.  The value lives in the
+     * tree node, so the entry queries below hand it back without any
+     * lookup on the side.
+     */
+    public void insert(Interval interval, V value) {
+	this.tree.insert(new IntervalNode(interval, value));
+	if (this.highs != null)
+	    this.highs.insert(new RbNode(interval.getHigh()));
+    }
+
+
+    /**
+     * An interval stored in the tree, with its value (null if it was
+     * inserted without one).
+     */
+    public interface Entry<V> {
+	Interval getInterval();
+	V getValue();
+    }
+
+
+
+    /**
+     * Adds intervals that are already sorted by their low endpoint,
+     * in time linear in the size of the tree plus the new intervals.
+     * Anything already in the tree is merged with them and the whole
+     * tree is rebuilt balanced.  If enableOverlapCounts() has been
+     * called, its index is rebuilt as well, which adds a sort of the
+     * high endpoints: O(n log n).
+     */
+    public void bulkLoad(Interval[] sorted) {
+	bulkLoad(sorted, null);
+    }
+
+
+    /**
+     * Like bulkLoad(Interval[]), storing values[i] with sorted[i].
+     * values may be null, in which case no values are stored.
+     */
+    public void bulkLoad(Interval[] sorted, V[] values) {
+	for (int i = 1; i < sorted.length; i++) {
+	    if (sorted[i].getLow() < sorted[i-1].getLow())
+		throw new IllegalArgumentException
+		    ("intervals are not sorted at index " + i);
+	}
+	bulkLoadNodes(newNodes(sorted, values));
+    }
+
+
+    /**
+     * Like bulkLoad(), but for intervals in any order: a sorted copy
+     * is made first, so this takes O(n log n).
+     */
+    public void bulkLoadUnsorted(Interval[] intervals) {
+	bulkLoadUnsorted(intervals, null);
+    }
+
+
+    /**
+     * Like bulkLoadUnsorted(Interval[]), storing values[i] with
+     * intervals[i].
+     */
+    public void bulkLoadUnsorted(Interval[] intervals, V[] values) {
+	IntervalNode[] nodes = newNodes(intervals, values);
+	// Arrays.sort on objects is stable, so equal intervals keep
+	// their order, as when sorting the intervals themselves.
+	Arrays.sort(nodes, new java.util.Comparator() {
+		public int compare(Object a, Object b) {
+		    return ((IntervalNode) a).interval.compareTo
+			(((IntervalNode) b).interval);
+		}
+	    });
+	bulkLoadNodes(nodes);
+    }
+
+
+    private IntervalNode[] newNodes(Interval[] intervals, V[] values) {
+	if (values != null && values.length != intervals.length)
+	    throw new IllegalArgumentException
+		(values.length + " values for " + intervals.length +
+		 " intervals");
+	IntervalNode[] nodes = new IntervalNode[intervals.length];
+	for (int i = 0; i < intervals.length; i++) {
+	    nodes[i] = new IntervalNode(intervals[i],
+					(values == null ? null : values[i]));
+	}
+	return nodes;
+    }
+
+
+    // Merges nodes, sorted by low, with the tree's own and rebuilds.
+    private void bulkLoadNodes(IntervalNode[] sorted) {
+	IntervalNode[] existing = new IntervalNode[this.tree.size()];
+	collectNodes(this.tree.root(), existing, 0);
+
+	RbNode[] nodes = new RbNode[existing.length + sorted.length];
+	int i = 0, j = 0, k = 0;
+	while (i < existing.length && j < sorted.length) {
+	    if (existing[i].low <= sorted[j].low) {
+		nodes[k++] = existing[i++];
+	    } else {
+		nodes[k++] = sorted[j++];
+	    }
+	}
+	while (i < existing.length) {
+	    nodes[k++] = existing[i++];
+	}
+	while (j < sorted.length) {
+	    nodes[k++] = sorted[j++];
+	}
+	this.tree.bulkLoad(nodes);
+	if (this.highs != null)
+	    this.highs = buildHighs();
+    }
+
+
+    /**
+     * Returns the intervals in the tree, sorted by low endpoint.
+     */
+    public Interval[] toArray() {
+	IntervalNode[] nodes = new IntervalNode[this.tree.size()];
+	collectNodes(this.tree.root(), nodes, 0);
+	Interval[] result = new Interval[nodes.length];
+	for (int i = 0; i < nodes.length; i++) {
+	    result[i] = nodes[i].interval;
+	}
+	return result;
+    }
+
+
+    /**
+     * Returns an immutable, pointer-free copy of the tree's current
+     * contents.  Later changes to this tree do not affect it.
+     */
+    public FrozenIntervalTree freeze() {
+	return new FrozenIntervalTree(toArray());
+    }
+
+
+    // Fills nodes with the subtree in order, starting at index i.
+    // Returns the next free index.
+    private int collectNodes(RbNode node, IntervalNode[] nodes, int i) {
+	if (node.isNull())
+	    return i;
+	i = collectNodes(node.left, nodes, i);
+	nodes[i++] = (IntervalNode) node;
+	return collectNodes(node.right, nodes, i);
+    }
+
+
+    /**
+     * Removes one interval equal to the given one.  Returns true if
+     * such an interval was found.
+     */
+    public boolean remove(Interval interval) {
+	RbNode node = find(tree.root(), interval);
+	if (node.isNull())
+	    return false;
+	this.tree.delete(node);
+	if (this.highs != null)
+	    this.highs.delete(this.highs.get(interval.getHigh()));
+	return true;
+    }
+
+
+    // Finds a node holding an interval equal to the given one.  Nodes
+    // with equal keys may sit on either side after rotations, so on a
+    // key match we look at both subtrees, skipping any whose max/min
+    // rule the interval out.
+    private RbNode find(RbNode node, Interval interval) {
+	int low = interval.getLow();
+	int high = interval.getHigh();
+	while (! node.isNull()) {
+	    IntervalNode n = (IntervalNode) node;
+	    if (n.maxHigh < high || n.minLow > low)
+		return RbNode.NIL;
+	    if (low < n.key) {
+		node = n.left;
+	    } else if (low > n.key) {
+		node = n.right;
+	    } else {
+		if (n.high == high)
+		    return n;
+		RbNode found = find(n.left, interval);
+		if (! found.isNull())
+		    return found;
+		node = n.right;
+	    }
+	}
+	return node;
     }
 
 
@@ -52,6 +248,92 @@ public class IntervalTree {
 
 
 
+    /**
+     * Makes countOverlaps() take O(log n) from now on, by keeping a
+     * second tree of the high endpoints.  That costs a node per
+     * interval and a second red-black insert or delete on every
+     * change, so it is off unless asked for.  Like insert(), this
+     * modifies the tree as far as other threads are concerned.
+     */
+    public void enableOverlapCounts() {
+	if (this.highs == null)
+	    this.highs = buildHighs();
+    }
+
+
+    /**
+     * Returns how many intervals overlap [low, high], without
+     * collecting them.  Returns 0 if low is greater than high.
+     *
+     * Once enableOverlapCounts() has been called this takes O(log n):
+     * an interval misses the query exactly when it starts after high
+     * or ends before low, and no interval does both, so the count is
+     * the size less those two ranks.  Otherwise the matches are
+     * walked and counted, in O(log n + k).
+     */
+    public int countOverlaps(int low, int high) {
+	if (low > high)
+	    return 0;
+	if (this.highs == null) {
+	    final int[] count = new int[1];
+	    forEachOverlap(low, high, new IntervalVisitor() {
+		    public boolean visit(Interval interval) {
+			count[0]++;
+			return true;
+		    }
+		});
+	    return count[0];
+	}
+	return this.tree.size()
+	    - this.tree.countGreater(high)
+	    - this.highs.countLess(low);
+    }
+
+
+    /**
+     * Counts the overlaps of count windows of the given width, the
+     * first starting at start and each next one step further on.
+     * Returns one count per window, as countOverlaps() would.
+     * Windows are clipped to the int range, and any lying wholly
+     * outside it count 0.
+     */
+    public int[] countOverlapsSliding(int start, int width, int step,
+				      int count) {
+	if (width < 1)
+	    throw new IllegalArgumentException("width must be positive");
+	int[] counts = new int[count];
+	for (int i = 0; i < count; i++) {
+	    // In longs, as the windows may run off either end.
+	    long low = start + (long) i * step;
+	    long high = low + width - 1;
+	    if (low > Integer.MAX_VALUE || high < Integer.MIN_VALUE)
+		continue;
+	    counts[i] = countOverlaps((int) Math.max(low, Integer.MIN_VALUE),
+				      (int) Math.min(high, Integer.MAX_VALUE));
+	}
+	return counts;
+    }
+
+
+    private RbTree buildHighs() {
+	IntervalNode[] nodes = new IntervalNode[this.tree.size()];
+	collectNodes(this.tree.root(), nodes, 0);
+	int[] keys = new int[nodes.length];
+	for (int i = 0; i < nodes.length; i++) {
+	    keys[i] = nodes[i].high;
+	}
+	Arrays.sort(keys);
+	RbNode[] highNodes = new RbNode[keys.length];
+	for (int i = 0; i < keys.length; i++) {
+	    highNodes[i] = new RbNode(keys[i]);
+	}
+	RbTree result = new RbTree();
+	result.bulkLoad(highNodes);
+	return result;
+    }
+
+
+
     // Returns the first matching interval that we can find.
     public Interval search(Interval interval) {
 
@@ -60,7 +342,7 @@ public class IntervalTree {
 	    return null;
 
 	while ( (! node.isNull()) &&
-		(! getInterval(node).overlaps(interval))) {
+		(! overlaps((IntervalNode) node, interval))) {
 	    if (canOverlapOnLeftSide(interval, node)) {
 		node = node.left;
 	    } else if (canOverlapOnRightSide(interval, node)) {
@@ -80,89 +362,682 @@ public class IntervalTree {
     private boolean canOverlapOnLeftSide(Interval interval,
 					 RbNode node) {
 	return (! node.left.isNull()) &&
-	    getMax(node.left) >= interval.getLow();
+	    ((IntervalNode) node.left).maxHigh >= interval.getLow();
     }
 
 
     private boolean canOverlapOnRightSide(Interval interval,
 					 RbNode node) {
 	return (! node.right.isNull()) &&
-	    getMin(node.right) <= interval.getHigh();
+	    ((IntervalNode) node.right).minLow <= interval.getHigh();
+    }
+
+
+    private static boolean overlaps(IntervalNode node, Interval interval) {
+	return (node.low <= interval.getHigh() &&
+		interval.getLow() <= node.high);
     }
 
 
 
     // Returns all matches as a list of Intervals
     public List searchAll(Interval interval) {
-	logger.debug("Starting search for " + interval);
+	if (logger.isDebugEnabled())
+	    logger.debug("Starting search for " + interval);
 
-	if (tree.root().isNull()) {
-	    return new ArrayList();
+	List results = new ArrayList();
+	if (! tree.root().isNull()) {
+	    _searchAll(interval.getLow(), interval.getHigh(), tree.root(),
+		       results, COLLECT_INTERVALS);
 	}
-	return this._searchAll(interval, tree.root());
+	return results;
     }
 
 
-    private List _searchAll(Interval interval, RbNode node) {
+    // What _searchAll() puts in the results for each match.
+    private static final int COLLECT_INTERVALS = 0;
+    private static final int COLLECT_ENTRIES = 1;
+    private static final int COLLECT_VALUES = 2;
+
+
+    private void _searchAll(int low, int high, RbNode node, List results,
+			    int collect) {
 	assert (! node.isNull());
 
-	logger.debug("Looking at " + getInterval(node));
+	IntervalNode n = (IntervalNode) node;
+	if (n.low <= high && low <= n.high) {
+	    if (collect == COLLECT_INTERVALS) {
+		results.add(n.interval);
+	    } else if (collect == COLLECT_ENTRIES) {
+		results.add(n);
+	    } else {
+		results.add(n.value);
+	    }
+	}
+	if ((! n.left.isNull()) && ((IntervalNode) n.left).maxHigh >= low) {
+	    _searchAll(low, high, n.left, results, collect);
+	}
+	if ((! n.right.isNull()) && ((IntervalNode) n.right).minLow <= high) {
+	    _searchAll(low, high, n.right, results, collect);
+	}
+    }
 
-	List results = new ArrayList();
-	if (getInterval(node).overlaps(interval)) {
-	    results.add(getInterval(node));
-	    logger.debug("match");
-	} else {
-	    logger.debug("mismatch");
+
+    /**
+     * search() for a caller holding no lock while a writer may be
+     * rotating nodes, as ConcurrentIntervalTree's optimistic reads
+     * are.  Every link is checked before it is followed and the walk
+     * gives up after maxSteps nodes, so a torn tree can only make it
+     * return false, never throw or loop.  found[0] means nothing
+     * unless the caller then checks that no writer ran meanwhile.
+     */
+    boolean racySearch(int low, int high, Interval[] found, int maxSteps) {
+	RbNode node = tree.root();
+	for (int steps = 0; steps < maxSteps; steps++) {
+	    if (! (node instanceof IntervalNode))
+		return false;
+	    IntervalNode n = (IntervalNode) node;
+	    if (n.isNull() || (n.low <= high && low <= n.high)) {
+		found[0] = (n.isNull() ? null : n.interval);
+		return true;
+	    }
+	    RbNode left = n.left;
+	    RbNode right = n.right;
+	    if (! (left instanceof IntervalNode &&
+		   right instanceof IntervalNode))
+		return false;
+	    if ((! left.isNull()) && ((IntervalNode) left).maxHigh >= low) {
+		node = left;
+	    } else if ((! right.isNull()) &&
+		       ((IntervalNode) right).minLow <= high) {
+		node = right;
+	    } else {
+		found[0] = null;
+		return true;
+	    }
 	}
+	return false;
+    }
+
 
-	if (canOverlapOnLeftSide(interval, node)) {
-	    results.addAll(_searchAll(interval, node.left));
+    /**
+     * The searchAll() counterpart of racySearch(), adding matches to
+     * results in the same order.  It keeps its own stack rather than
+     * recursing, since a torn tree need not be shallow.
+     */
+    boolean racySearchAll(int low, int high, List results, int maxSteps) {
+	RbNode root = tree.root();
+	if (! (root instanceof IntervalNode))
+	    return false;
+	if (root.isNull())
+	    return true;
+	RbNode[] stack = new RbNode[64];
+	int top = 0;
+	stack[top++] = root;
+	int steps = 0;
+	while (top > 0) {
+	    if (++steps > maxSteps)
+		return false;
+	    IntervalNode n = (IntervalNode) stack[--top];
+	    if (n.low <= high && low <= n.high)
+		results.add(n.interval);
+	    RbNode left = n.left;
+	    RbNode right = n.right;
+	    if (! (left instanceof IntervalNode &&
+		   right instanceof IntervalNode))
+		return false;
+	    if (top + 2 > stack.length) {
+		RbNode[] bigger = new RbNode[stack.length * 2];
+		System.arraycopy(stack, 0, bigger, 0, top);
+		stack = bigger;
+	    }
+	    // Right goes on first so that left comes off first, as in
+	    // _searchAll().
+	    if ((! right.isNull()) && ((IntervalNode) right).minLow <= high)
+		stack[top++] = right;
+	    if ((! left.isNull()) && ((IntervalNode) left).maxHigh >= low)
+		stack[top++] = left;
 	}
+	return true;
+    }
 
-	if (canOverlapOnRightSide(interval, node)) {
-	    results.addAll(_searchAll(interval, node.right));
+
+    /**
+     * Returns the entry of the first match we can find, or null.
+     */
+    public Entry<V> searchEntry(Interval interval) {
+	RbNode node = tree.root();
+	while ((! node.isNull()) &&
+	       (! overlaps((IntervalNode) node, interval))) {
+	    if (canOverlapOnLeftSide(interval, node)) {
+		node = node.left;
+	    } else if (canOverlapOnRightSide(interval, node)) {
+		node = node.right;
+	    } else {
+		return null;
+	    }
 	}
+	if (node.isNull())
+	    return null;
+	return entry(node);
+    }
+
 
+    /**
+     * Returns the entries of all the intervals overlapping the given
+     * one.  The entries are the tree's own nodes; they stay valid
+     * until the interval is removed.
+     */
+    public List<Entry<V>> searchAllEntries(Interval interval) {
+	List<Entry<V>> results = new ArrayList<Entry<V>>();
+	if (! tree.root().isNull()) {
+	    _searchAll(interval.getLow(), interval.getHigh(), tree.root(),
+		       results, COLLECT_ENTRIES);
+	}
 	return results;
     }
 
 
+    /**
+     * Returns the values of all the intervals overlapping the given
+     * one.
+     */
+    public List<V> searchAllValues(Interval interval) {
+	List<V> results = new ArrayList<V>();
+	if (! tree.root().isNull()) {
+	    _searchAll(interval.getLow(), interval.getHigh(), tree.root(),
+		       results, COLLECT_VALUES);
+	}
+	return results;
+    }
 
-    
-    public Interval getInterval(RbNode node) {
-	assert (node != null);
-	assert (! node.isNull());
 
-	assert (this.intervals.containsKey(node));
+    @SuppressWarnings("unchecked")
+    private Entry<V> entry(RbNode node) {
+	return (Entry<V>) node;
+    }
+
 
-	return (Interval) this.intervals.get(node);
+    /**
+     * Answers many queries in one coordinated walk of the tree.  The
+     * queries are sorted by low endpoint and pushed down the tree
+     * together, so each node is visited at most once for the whole
+     * batch.  A subtree only sees the queries its max/min say can
+     * match there.  Returns one list of matches per query, in the
+     * same order as the queries.
+     */
+    public List[] searchAllBatch(Interval[] queries) {
+	int m = queries.length;
+	List[] results = new List[m];
+	for (int i = 0; i < m; i++) {
+	    results[i] = new ArrayList();
+	}
+	if (m == 0 || tree.root().isNull())
+	    return results;
+
+	int[] order = sortByLow(queries);
+	int[] lows = new int[m];
+	int[] highs = new int[m];
+	for (int i = 0; i < m; i++) {
+	    lows[i] = queries[i].getLow();
+	    highs[i] = queries[i].getHigh();
+	}
+
+	// The active queries are partitioned in place within order, so
+	// the whole walk needs just the one spare array besides.
+	_searchAllBatch((IntervalNode) tree.root(), m, order, new int[m],
+			lows, highs, results);
+	return results;
     }
 
 
-    public int getMax(RbNode node) {
-	assert (node != null);
-	assert (this.intervals.containsKey(node));
+    // Returns the indices of the queries in order of low endpoint.
+    static int[] sortByLow(Interval[] queries) {
+	// Pack (low, index) into longs so a primitive sort does the work.
+	long[] keys = new long[queries.length];
+	for (int i = 0; i < queries.length; i++) {
+	    keys[i] = ((long) queries[i].getLow() << 32) | i;
+	}
+	Arrays.sort(keys);
+	int[] order = new int[queries.length];
+	for (int i = 0; i < queries.length; i++) {
+	    order[i] = (int) keys[i];
+	}
+	return order;
+    }
+
 
-	return ((Integer) this.max.get(node)).intValue();
+    /**
+     * Like searchAllBatch(), but spreads the work over the pool.  The
+     * queries are sorted by low endpoint and cut into runs of nearby
+     * queries, and each run is answered as a batch by one task.
+     * Returns one list of matches per query, in input order.  See the
+     * class comment for what other threads may do meanwhile.
+     */
+    public List[] searchAllParallel(Interval[] queries, ForkJoinPool pool) {
+	List[] results = new List[queries.length];
+	if (queries.length > 0) {
+	    pool.invoke(batchTask(queries, results));
+	}
+	return results;
     }
 
 
-    private void setMax(RbNode node, int value) {
-	this.max.put(node, new Integer(value));
+    // Returns a task that fills results with the matches of each
+    // query, for callers that fork it alongside other work.
+    RecursiveAction batchTask(Interval[] queries, List[] results) {
+	return new BatchTask(queries, sortByLow(queries),
+			     0, queries.length, results);
     }
 
 
-    public int getMin(RbNode node) {
+    // Queries per task before we stop splitting.
+    private static final int PARALLEL_BATCH_SIZE = 512;
+
+
+    private class BatchTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	private final Interval[] queries;
+	private final int[] order;
+	private final int from;
+	private final int to;
+	private final List[] results;
+
+	BatchTask(Interval[] queries, int[] order, int from, int to,
+		  List[] results) {
+	    this.queries = queries;
+	    this.order = order;
+	    this.from = from;
+	    this.to = to;
+	    this.results = results;
+	}
+
+
+	protected void compute() {
+	    if (to - from <= PARALLEL_BATCH_SIZE) {
+		Interval[] run = new Interval[to - from];
+		for (int i = from; i < to; i++) {
+		    run[i - from] = queries[order[i]];
+		}
+		List[] runResults = searchAllBatch(run);
+		for (int i = from; i < to; i++) {
+		    results[order[i]] = runResults[i - from];
+		}
+		return;
+	    }
+	    int mid = (from + to) >>> 1;
+	    invokeAll(new BatchTask(queries, order, from, mid, results),
+		      new BatchTask(queries, order, mid, to, results));
+	}
+    }
+
+
+    // Answers the queries in active[0, count) at n and below.  They
+    // are in order of low endpoint, and are back in that order on
+    // return.
+    private void _searchAllBatch(IntervalNode n, int count,
+				 int[] active, int[] spare,
+				 int[] lows, int[] highs, List[] results) {
+	for (int j = 0; j < count; j++) {
+	    int q = active[j];
+	    if (n.low <= highs[q] && lows[q] <= n.high) {
+		results[q].add(n.interval);
+	    }
+	}
+
+	if (! n.left.isNull()) {
+	    descendBatch((IntervalNode) n.left, count, active, spare,
+			 lows, highs, results);
+	}
+	if (! n.right.isNull()) {
+	    descendBatch((IntervalNode) n.right, count, active, spare,
+			 lows, highs, results);
+	}
+    }
+
+
+    // Moves the queries that can match under child to the front of
+    // active, keeping their order, and answers them there.  Then
+    // merges them back with the rest so active[0, count) is as it was.
+    private void descendBatch(IntervalNode child, int count,
+			      int[] active, int[] spare,
+			      int[] lows, int[] highs, List[] results) {
+	int c = 0;
+	int s = 0;
+	int end = 0;
+	for (; end < count; end++) {
+	    int q = active[end];
+	    // Queries are in order of low, so none past here fit.
+	    if (lows[q] > child.maxHigh)
+		break;
+	    if (highs[q] >= child.minLow) {
+		active[c++] = q;
+	    } else {
+		spare[s++] = q;
+	    }
+	}
+	if (c == 0)
+	    return;
+	// The deeper levels use spare too, so park the others in
+	// active behind the child's queries.
+	System.arraycopy(spare, 0, active, c, s);
+	_searchAllBatch(child, c, active, spare, lows, highs, results);
+
+	System.arraycopy(active, 0, spare, 0, c);
+	int i = 0, k = c, w = 0;
+	while (i < c && k < end) {
+	    if (precedes(spare[i], active[k], lows)) {
+		active[w++] = spare[i++];
+	    } else {
+		active[w++] = active[k++];
+	    }
+	}
+	while (i < c) {
+	    active[w++] = spare[i++];
+	}
+    }
+
+
+    // The order sortByLow() puts queries in: by low, then by index.
+    private static boolean precedes(int a, int b, int[] lows) {
+	return lows[a] < lows[b] || (lows[a] == lows[b] && a < b);
+    }
+
+
+    /**
+     * Hands every interval overlapping the given one to the visitor,
+     * without building a result list.  Returns false if the visitor
+     * stopped the search early.
+     */
+    public boolean searchAll(Interval interval, IntervalVisitor visitor) {
+	return forEachOverlap(interval.getLow(), interval.getHigh(), visitor);
+    }
+
+
+    /**
+     * Hands every interval overlapping [low, high] to the visitor.
+     * Returns false if the visitor stopped the search early.
+     */
+    public boolean forEachOverlap(int low, int high, IntervalVisitor visitor) {
+	if (tree.root().isNull())
+	    return true;
+	return _forEachOverlap(low, high, tree.root(), visitor);
+    }
+
+
+    private boolean _forEachOverlap(int low, int high, RbNode node,
+				    IntervalVisitor visitor) {
+	IntervalNode n = (IntervalNode) node;
+	if (n.low <= high && low <= n.high) {
+	    if (! visitor.visit(n.interval))
+		return false;
+	}
+	if ((! n.left.isNull()) && ((IntervalNode) n.left).maxHigh >= low) {
+	    if (! _forEachOverlap(low, high, n.left, visitor))
+		return false;
+	}
+	if ((! n.right.isNull()) && ((IntervalNode) n.right).minLow <= high) {
+	    return _forEachOverlap(low, high, n.right, visitor);
+	}
+	return true;
+    }
+
+
+
+    /**
+     * Returns an interval containing pos, or null if there is none.
+     * A point query needs no Interval: each side of a node is ruled
+     * out by one comparison against its max or min.
+     */
+    public Interval stab(int pos) {
+	RbNode node = tree.root();
+	while (! node.isNull()) {
+	    IntervalNode n = (IntervalNode) node;
+	    if (n.low <= pos && pos <= n.high)
+		return n.interval;
+	    // NIL's max/min are the int extremes, which a pos at
+	    // either extreme still passes, so check for it as well.
+	    if ((! n.left.isNull()) &&
+		((IntervalNode) n.left).maxHigh >= pos) {
+		node = n.left;
+	    } else if ((! n.right.isNull()) &&
+		       ((IntervalNode) n.right).minLow <= pos) {
+		node = n.right;
+	    } else {
+		return null;
+	    }
+	}
+	return null;
+    }
+
+
+    /**
+     * Hands every interval containing pos to the visitor.  Returns
+     * false if the visitor stopped the search early.
+     */
+    public boolean forEachStabbing(int pos, IntervalVisitor visitor) {
+	if (tree.root().isNull())
+	    return true;
+	return _forEachStabbing(pos, (IntervalNode) tree.root(), visitor);
+    }
+
+
+    private boolean _forEachStabbing(int pos, IntervalNode n,
+				     IntervalVisitor visitor) {
+	// Loop down a single child; recurse only when both can match.
+	while (true) {
+	    if (n.low <= pos && pos <= n.high) {
+		if (! visitor.visit(n.interval))
+		    return false;
+	    }
+	    boolean goLeft = (! n.left.isNull()) &&
+		((IntervalNode) n.left).maxHigh >= pos;
+	    boolean goRight = (! n.right.isNull()) &&
+		((IntervalNode) n.right).minLow <= pos;
+	    if (goRight) {
+		if (goLeft &&
+		    ! _forEachStabbing(pos, (IntervalNode) n.left, visitor))
+		    return false;
+		n = (IntervalNode) n.right;
+	    } else if (goLeft) {
+		n = (IntervalNode) n.left;
+	    } else {
+		return true;
+	    }
+	}
+    }
+
+
+
+    /**
+     * Returns the k intervals closest to pos, nearest first.  An
+     * interval containing pos is at distance 0; otherwise the
+     * distance is to its nearer endpoint.  Ties are broken
+     * arbitrarily.
+     *
+     * This is a best-first search: a subtree is opened only once the
+     * span [minLow, maxHigh] it covers is nearer than every candidate
+     * still waiting, so for k much smaller than n only a few paths
+     * from the root are explored.  Subtrees whose spans contain pos
+     * cannot be ruled out this way, so heavily nested data costs
+     * more.
+     */
+    public List nearest(int pos, int k) {
+	List results = new ArrayList();
+	if (k <= 0 || tree.root().isNull())
+	    return results;
+
+	PriorityQueue queue = new PriorityQueue();
+	IntervalNode root = (IntervalNode) tree.root();
+	queue.add(new Candidate(root, distance(pos, root.minLow,
+					       root.maxHigh), false));
+	while (results.size() < k && ! queue.isEmpty()) {
+	    Candidate c = (Candidate) queue.poll();
+	    IntervalNode n = c.node;
+	    if (c.single) {
+		results.add(n.interval);
+		continue;
+	    }
+	    queue.add(new Candidate(n, distance(pos, n.low, n.high), true));
+	    if (! n.left.isNull()) {
+		IntervalNode left = (IntervalNode) n.left;
+		queue.add(new Candidate(left, distance(pos, left.minLow,
+						       left.maxHigh), false));
+	    }
+	    if (! n.right.isNull()) {
+		IntervalNode right = (IntervalNode) n.right;
+		queue.add(new Candidate(right, distance(pos, right.minLow,
+							right.maxHigh), false));
+	    }
+	}
+	return results;
+    }
+
+
+    // Distance from pos to [low, high]; long, as it can exceed an int.
+    private static long distance(int pos, int low, int high) {
+	if (pos < low)
+	    return (long) low - pos;
+	if (pos > high)
+	    return (long) pos - high;
+	return 0;
+    }
+
+
+    // A node's own interval (single) or its whole subtree, queued by
+    // a lower bound on its distance.  At equal distances intervals
+    // come out first, so they are returned before more is opened.
+    private static class Candidate implements Comparable {
+	final IntervalNode node;
+	final long distance;
+	final boolean single;
+
+	Candidate(IntervalNode node, long distance, boolean single) {
+	    this.node = node;
+	    this.distance = distance;
+	    this.single = single;
+	}
+
+
+	public int compareTo(Object o) {
+	    Candidate other = (Candidate) o;
+	    if (this.distance != other.distance)
+		return (this.distance < other.distance ? -1 : 1);
+	    if (this.single != other.single)
+		return (this.single ? -1 : 1);
+	    return 0;
+	}
+    }
+
+
+
+    
+    /**
+     * Returns an iterator over the intervals overlapping [low, high].
+     * Matches are found as the iterator is advanced, using a stack no
+     * deeper than the tree.  The tree must not be modified while the
+     * iterator is in use.
+     */
+    public Iterator overlapIterator(int low, int high) {
+	return new OverlapIterator(low, high, tree.root());
+    }
+
+
+    // Preorder walk with an explicit stack: each pending subtree is
+    // pushed only if its max/min say it can hold a match.
+    private static class OverlapIterator implements Iterator {
+	private final int low;
+	private final int high;
+	private RbNode[] stack;
+	private int depth;
+	private IntervalNode next;
+
+	OverlapIterator(int low, int high, RbNode root) {
+	    this.low = low;
+	    this.high = high;
+	    this.stack = new RbNode[16];
+	    this.depth = 0;
+	    if (! root.isNull())
+		push(root);
+	    advance();
+	}
+
+
+	public boolean hasNext() {
+	    return this.next != null;
+	}
+
+
+	public Object next() {
+	    if (this.next == null)
+		throw new NoSuchElementException();
+	    Interval result = this.next.interval;
+	    advance();
+	    return result;
+	}
+
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+
+
+	private void advance() {
+	    while (this.depth > 0) {
+		IntervalNode n = (IntervalNode) this.stack[--this.depth];
+		this.stack[this.depth] = null;
+		if ((! n.right.isNull()) &&
+		    ((IntervalNode) n.right).minLow <= this.high) {
+		    push(n.right);
+		}
+		if ((! n.left.isNull()) &&
+		    ((IntervalNode) n.left).maxHigh >= this.low) {
+		    push(n.left);
+		}
+		if (n.low <= this.high && this.low <= n.high) {
+		    this.next = n;
+		    return;
+		}
+	    }
+	    this.next = null;
+	}
+
+
+	private void push(RbNode node) {
+	    if (this.depth == this.stack.length) {
+		RbNode[] newStack = new RbNode[this.stack.length * 2];
+		System.arraycopy(this.stack, 0, newStack, 0, this.depth);
+		this.stack = newStack;
+	    }
+	    this.stack[this.depth++] = node;
+	}
+    }
+
+
+
+    
+    public Interval getInterval(RbNode node) {
 	assert (node != null);
-	assert (this.intervals.containsKey(node));
+	assert (! node.isNull());
 
-	return ((Integer) this.min.get(node)).intValue();
+	return ((IntervalNode) node).interval;
     }
 
 
-    private void setMin(RbNode node, int value) {
-	this.min.put(node, new Integer(value));
+    public int getMax(RbNode node) {
+	assert (node != null);
+	if (node.isNull())
+	    return Integer.MIN_VALUE;
+	return ((IntervalNode) node).maxHigh;
+    }
+
+
+    public int getMin(RbNode node) {
+	assert (node != null);
+	if (node.isNull())
+	    return Integer.MAX_VALUE;
+	return ((IntervalNode) node).minLow;
     }
 
 
@@ -170,13 +1045,13 @@ public class IntervalTree {
     private class IntervalTreeStatisticUpdate 
 	implements StatisticUpdate {
 	public void update(RbNode node) {
-	    setMax(node, max(max(getMax(node.left),
-				 getMax(node.right)),
-			     getInterval(node).getHigh()));
-
-	    setMin(node, min(min(getMin(node.left),
-				 getMin(node.right)),
-			     getInterval(node).getLow()));
+	    // Our NIL is an IntervalNode too, with max/min that never
+	    // win, so children can be read without checking for it.
+	    IntervalNode n = (IntervalNode) node;
+	    IntervalNode left = (IntervalNode) n.left;
+	    IntervalNode right = (IntervalNode) n.right;
+	    n.maxHigh = max(max(left.maxHigh, right.maxHigh), n.high);
+	    n.minLow = min(min(left.minLow, right.minLow), n.low);
 	}
 
 
@@ -0,0 +1,11 @@
+package org.arabidopsis.interval;
+
+
+/**
+ * Callback for the visiting searches on IntervalTree: visit() is
+ * called once per matching interval, and returning false stops the
+ * search.
+ */
+public interface IntervalVisitor {
+    boolean visit(Interval interval);
+}
@@ -0,0 +1,69 @@
+package org.arabidopsis.interval;
+
+// Interval with 64-bit endpoints, for coordinates past 2^31.
+public class LongInterval implements Comparable {
+    private final long low;
+    private final long high;
+
+    public LongInterval(long low, long high) {
+	assert low <= high;
+	this.low = low;
+	this.high = high;
+    }
+
+
+    public boolean equals(Object other) {
+	if (this == other)
+	    return true;
+	if (other != null && this.getClass().equals(other.getClass())) {
+	    LongInterval otherInterval = (LongInterval) other;
+	    return (this.low == otherInterval.low &&
+		    this.high == otherInterval.high);
+	}
+	return false;
+    }
+
+
+    public int hashCode() {
+	long h = this.low * 31 + this.high;
+	return (int) (h ^ (h >>> 32));
+    }
+
+
+    public int compareTo(Object o) {
+	LongInterval other = (LongInterval) o;
+	if (this.low < other.low)
+	    return -1;
+	if (this.low > other.low)
+	    return 1;
+
+	if (this.high < other.high)
+	    return -1;
+	if (this.high > other.high)
+	    return 1;
+
+	return 0;
+    }
+
+    public String toString() {
+	return "LongInterval[" + this.low + ", " + this.high + "]";
+    }
+
+
+    /**
+     * Returns true if this interval overlaps the other.
+     */
+    public boolean overlaps(LongInterval other) {
+	return (this.low <= other.high &&
+		other.low <= this.high);
+    }
+
+
+    public long getLow() {
+	return this.low;
+    }
+
+    public long getHigh() {
+	return this.high;
+    }
+}
@@ -0,0 +1,33 @@
+package org.arabidopsis.interval;
+
+
+/**
+ * The LongIntervalTree counterpart of IntervalNode: the endpoints and
+ * the augmented max/min of the subtree are primitive longs.  The int
+ * key inherited from RbNode is unused.
+ */
+public class LongIntervalNode extends RbNode {
+    public LongInterval interval;
+    public long low;
+    public long high;
+    public long maxHigh;
+    public long minLow;
+
+
+    public LongIntervalNode(LongInterval interval) {
+	super(0);
+	this.interval = interval;
+	this.low = interval.getLow();
+	this.high = interval.getHigh();
+	this.maxHigh = this.high;
+	this.minLow = this.low;
+    }
+
+
+    // Builds a NIL sentinel whose max/min never win a comparison.
+    LongIntervalNode() {
+	super();
+	this.maxHigh = Long.MIN_VALUE;
+	this.minLow = Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,289 @@
+package org.arabidopsis.interval;
+
+/**
+ * An interval tree over 64-bit coordinates, for positions that do not
+ * fit in an int (whole-genome offsets, concatenated assemblies).  It
+ * is IntervalTree with every endpoint, max and min kept as a
+ * primitive long, so searching never boxes a coordinate.
+ *
+ * The same rules as IntervalTree apply to threads: searches may run
+ * concurrently once the tree is safely published, as long as nothing
+ * modifies it meanwhile.
+ */
+
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class LongIntervalTree {
+    private RbTree tree;
+
+
+    public LongIntervalTree() {
+	this.tree = new LongRbTree();
+    }
+
+
+    public void insert(LongInterval interval) {
+	this.tree.insert(new LongIntervalNode(interval));
+    }
+
+
+    /**
+     * Adds intervals that are already sorted by their low endpoint,
+     * merging them with the tree's contents and rebuilding it
+     * balanced, in linear time.
+     */
+    public void bulkLoad(LongInterval[] sorted) {
+	for (int i = 1; i < sorted.length; i++) {
+	    if (sorted[i].getLow() < sorted[i-1].getLow())
+		throw new IllegalArgumentException
+		    ("intervals are not sorted at index " + i);
+	}
+
+	LongIntervalNode[] existing = new LongIntervalNode[this.tree.size()];
+	collectNodes(this.tree.root(), existing, 0);
+
+	RbNode[] nodes = new RbNode[existing.length + sorted.length];
+	int i = 0, j = 0, k = 0;
+	while (i < existing.length && j < sorted.length) {
+	    if (existing[i].low <= sorted[j].getLow()) {
+		nodes[k++] = existing[i++];
+	    } else {
+		nodes[k++] = new LongIntervalNode(sorted[j++]);
+	    }
+	}
+	while (i < existing.length) {
+	    nodes[k++] = existing[i++];
+	}
+	while (j < sorted.length) {
+	    nodes[k++] = new LongIntervalNode(sorted[j++]);
+	}
+	// The int keys are all zero, so RbTree's own order check
+	// passes; ours above is the one that counts.
+	this.tree.bulkLoad(nodes);
+    }
+
+
+    /**
+     * Like bulkLoad(), but for intervals in any order.
+     */
+    public void bulkLoadUnsorted(LongInterval[] intervals) {
+	LongInterval[] sorted = new LongInterval[intervals.length];
+	System.arraycopy(intervals, 0, sorted, 0, intervals.length);
+	Arrays.sort(sorted);
+	bulkLoad(sorted);
+    }
+
+
+    /**
+     * Returns the intervals in the tree, sorted by low endpoint.
+     */
+    public LongInterval[] toArray() {
+	LongIntervalNode[] nodes = new LongIntervalNode[this.tree.size()];
+	collectNodes(this.tree.root(), nodes, 0);
+	LongInterval[] result = new LongInterval[nodes.length];
+	for (int i = 0; i < nodes.length; i++) {
+	    result[i] = nodes[i].interval;
+	}
+	return result;
+    }
+
+
+    private int collectNodes(RbNode node, LongIntervalNode[] nodes, int i) {
+	if (node.isNull())
+	    return i;
+	i = collectNodes(node.left, nodes, i);
+	nodes[i++] = (LongIntervalNode) node;
+	return collectNodes(node.right, nodes, i);
+    }
+
+
+    /**
+     * Removes one interval equal to the given one.  Returns true if
+     * such an interval was found.
+     */
+    public boolean remove(LongInterval interval) {
+	RbNode node = find(tree.root(), interval.getLow(), interval.getHigh());
+	if (node.isNull())
+	    return false;
+	this.tree.delete(node);
+	return true;
+    }
+
+
+    // As IntervalTree.find(), ordering on the long low endpoint.
+    private RbNode find(RbNode node, long low, long high) {
+	while (! node.isNull()) {
+	    LongIntervalNode n = (LongIntervalNode) node;
+	    if (n.maxHigh < high || n.minLow > low)
+		return RbNode.NIL;
+	    if (low < n.low) {
+		node = n.left;
+	    } else if (low > n.low) {
+		node = n.right;
+	    } else {
+		if (n.high == high)
+		    return n;
+		RbNode found = find(n.left, low, high);
+		if (! found.isNull())
+		    return found;
+		node = n.right;
+	    }
+	}
+	return node;
+    }
+
+
+    public int size() {
+	return this.tree.size();
+    }
+
+
+    // Returns the first matching interval that we can find, or null.
+    public LongInterval search(LongInterval interval) {
+	long low = interval.getLow();
+	long high = interval.getHigh();
+	RbNode node = tree.root();
+	while (! node.isNull()) {
+	    LongIntervalNode n = (LongIntervalNode) node;
+	    if (n.low <= high && low <= n.high)
+		return n.interval;
+	    if ((! n.left.isNull()) &&
+		((LongIntervalNode) n.left).maxHigh >= low) {
+		node = n.left;
+	    } else if ((! n.right.isNull()) &&
+		       ((LongIntervalNode) n.right).minLow <= high) {
+		node = n.right;
+	    } else {
+		return null;
+	    }
+	}
+	return null;
+    }
+
+
+    // Returns all matches as a list of LongIntervals
+    public List searchAll(LongInterval interval) {
+	final List results = new ArrayList();
+	forEachOverlap(interval.getLow(), interval.getHigh(),
+		       new LongIntervalVisitor() {
+			   public boolean visit(LongInterval match) {
+			       results.add(match);
+			       return true;
+			   }
+		       });
+	return results;
+    }
+
+
+    /**
+     * Hands every interval overlapping the given one to the visitor.
+     * Returns false if the visitor stopped the search early.
+     */
+    public boolean searchAll(LongInterval interval,
+			     LongIntervalVisitor visitor) {
+	return forEachOverlap(interval.getLow(), interval.getHigh(), visitor);
+    }
+
+
+    /**
+     * Hands every interval overlapping [low, high] to the visitor.
+     * Returns false if the visitor stopped the search early.
+     */
+    public boolean forEachOverlap(long low, long high,
+				  LongIntervalVisitor visitor) {
+	if (tree.root().isNull())
+	    return true;
+	return _forEachOverlap(low, high, tree.root(), visitor);
+    }
+
+
+    private boolean _forEachOverlap(long low, long high, RbNode node,
+				    LongIntervalVisitor visitor) {
+	LongIntervalNode n = (LongIntervalNode) node;
+	if (n.low <= high && low <= n.high) {
+	    if (! visitor.visit(n.interval))
+		return false;
+	}
+	// NIL's max/min are the long extremes, which a query reaching
+	// either extreme still passes, so check for it as well.
+	if ((! n.left.isNull()) &&
+	    ((LongIntervalNode) n.left).maxHigh >= low) {
+	    if (! _forEachOverlap(low, high, n.left, visitor))
+		return false;
+	}
+	if ((! n.right.isNull()) &&
+	    ((LongIntervalNode) n.right).minLow <= high) {
+	    return _forEachOverlap(low, high, n.right, visitor);
+	}
+	return true;
+    }
+
+
+
+    // An RbTree ordered on the nodes' long low endpoint rather than
+    // the int key, keeping maxHigh/minLow up to date.
+    private static class LongRbTree extends RbTree {
+	LongRbTree() {
+	    super(new LongIntervalStatisticUpdate(), new LongIntervalNode());
+	}
+
+
+	boolean goesLeft(RbNode x, RbNode node) {
+	    return ((LongIntervalNode) x).low <= ((LongIntervalNode) node).low;
+	}
+    }
+
+
+    private static class LongIntervalStatisticUpdate
+	implements StatisticUpdate {
+	public void update(RbNode node) {
+	    LongIntervalNode n = (LongIntervalNode) node;
+	    LongIntervalNode left = (LongIntervalNode) n.left;
+	    LongIntervalNode right = (LongIntervalNode) n.right;
+	    long max = (left.maxHigh > right.maxHigh ?
+			left.maxHigh : right.maxHigh);
+	    long min = (left.minLow < right.minLow ?
+			left.minLow : right.minLow);
+	    n.maxHigh = (max > n.high ? max : n.high);
+	    n.minLow = (min < n.low ? min : n.low);
+	}
+    }
+
+
+
+    /**
+     * Checks the red-black constraints and that every node's max/min
+     * match its subtree.  Expensive; for assertions and testing.
+     */
+    public boolean isValid() {
+	return this.tree.isValid() && hasCorrectFields(this.tree.root());
+    }
+
+
+    private boolean hasCorrectFields(RbNode node) {
+	if (node.isNull())
+	    return true;
+	LongIntervalNode n = (LongIntervalNode) node;
+	return (n.maxHigh == realMax(n) && n.minLow == realMin(n) &&
+		hasCorrectFields(n.left) && hasCorrectFields(n.right));
+    }
+
+
+    private long realMax(RbNode node) {
+	if (node.isNull())
+	    return Long.MIN_VALUE;
+	LongIntervalNode n = (LongIntervalNode) node;
+	return Math.max(n.high, Math.max(realMax(n.left), realMax(n.right)));
+    }
+
+
+    private long realMin(RbNode node) {
+	if (node.isNull())
+	    return Long.MAX_VALUE;
+	LongIntervalNode n = (LongIntervalNode) node;
+	return Math.min(n.low, Math.min(realMin(n.left), realMin(n.right)));
+    }
+}
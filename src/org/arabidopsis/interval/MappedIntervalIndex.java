@@ -0,0 +1,289 @@
+package org.arabidopsis.interval;
+
+/**
+ * A frozen interval tree stored in a file, queried in place through
+ * memory-mapped buffers with no deserialization step.  Opening an
+ * index costs the same whatever its size, and every process that maps
+ * the same file shares one copy of it in the OS page cache.
+ *
+ * The file is big-endian and laid out as follows:
+ *
+ *     header      magic (8 bytes), version (int), count n (int),
+ *                 payload length (long), reserved (8 bytes)
+ *     lows        int[n]
+ *     highs       int[n]
+ *     maxHighs    int[n]
+ *     offsets     long[n + 1], into the payload section
+ *     payload     bytes
+ *
+ * The three int arrays hold the implicit BFS layout of
+ * FrozenIntervalTree.  Entry k's payload is the bytes from offsets[k]
+ * up to offsets[k + 1].  Each section is mapped separately, so none
+ * of them may be larger than 2GB.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.ArrayList;
+
+public class MappedIntervalIndex {
+    static final long MAGIC = 0x4956545245453031L; // "IVTREE01"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private final int count;
+    private final IntBuffer lows;
+    private final IntBuffer highs;
+    private final IntBuffer maxHighs;
+    private final LongBuffer offsets;
+    private final ByteBuffer payload;
+
+
+    /**
+     * Called with each matching entry by forEachOverlappingEntry().
+     * Return false to stop the search.
+     */
+    public interface EntryVisitor {
+	boolean visit(int entry, int low, int high);
+    }
+
+
+    private MappedIntervalIndex(FileChannel channel) throws IOException {
+	ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, HEADER_SIZE);
+	if (header.getLong(0) != MAGIC)
+	    throw new IOException("not an interval index");
+	if (header.getInt(8) != VERSION)
+	    throw new IOException("unsupported index version " +
+				  header.getInt(8));
+	this.count = header.getInt(12);
+	long payloadLength = header.getLong(16);
+
+	long position = HEADER_SIZE;
+	long intSection = 4L * this.count;
+	this.lows = map(channel, position, intSection).asIntBuffer();
+	position += intSection;
+	this.highs = map(channel, position, intSection).asIntBuffer();
+	position += intSection;
+	this.maxHighs = map(channel, position, intSection).asIntBuffer();
+	position += intSection;
+	long offsetSection = 8L * (this.count + 1);
+	this.offsets = map(channel, position, offsetSection).asLongBuffer();
+	position += offsetSection;
+	this.payload = map(channel, position, payloadLength);
+    }
+
+
+    private static ByteBuffer map(FileChannel channel, long position,
+				  long length) throws IOException {
+	if (length > Integer.MAX_VALUE)
+	    throw new IOException("index section too large to map");
+	return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+
+    /**
+     * Maps an index file written by write().
+     */
+    public static MappedIntervalIndex open(File file) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    // The mappings stay valid after the channel is closed.
+	    return new MappedIntervalIndex(raf.getChannel());
+	} finally {
+	    raf.close();
+	}
+    }
+
+
+    /**
+     * Writes a frozen tree with no payloads.
+     */
+    public static void write(FrozenIntervalTree tree, File file)
+	throws IOException {
+	write(tree, new long[tree.size() + 1], new byte[0], file);
+    }
+
+
+    /**
+     * Writes intervals, in any order, each with a payload of bytes.
+     * payloads[i] belongs to intervals[i] and may be null.
+     */
+    public static void write(Interval[] intervals, byte[][] payloads,
+			     File file) throws IOException {
+	int n = intervals.length;
+	if (payloads.length != n)
+	    throw new IllegalArgumentException("need one payload per interval");
+
+	int[] byLow = IntervalTree.sortByLow(intervals);
+	Interval[] sorted = new Interval[n];
+	for (int i = 0; i < n; i++) {
+	    sorted[i] = intervals[byLow[i]];
+	}
+	FrozenIntervalTree tree = new FrozenIntervalTree(sorted);
+
+	// Lay the payloads out in the tree's slot order.
+	int[] order = FrozenIntervalTree.eytzingerOrder(n);
+	long[] offsets = new long[n + 1];
+	for (int k = 0; k < n; k++) {
+	    byte[] bytes = payloads[byLow[order[k]]];
+	    offsets[k + 1] = offsets[k] + (bytes == null ? 0 : bytes.length);
+	}
+	if (offsets[n] > Integer.MAX_VALUE)
+	    throw new IllegalArgumentException("payloads exceed 2GB");
+	byte[] payload = new byte[(int) offsets[n]];
+	for (int k = 0; k < n; k++) {
+	    byte[] bytes = payloads[byLow[order[k]]];
+	    if (bytes != null)
+		System.arraycopy(bytes, 0, payload, (int) offsets[k],
+				 bytes.length);
+	}
+	write(tree, offsets, payload, file);
+    }
+
+
+    private static void write(FrozenIntervalTree tree, long[] offsets,
+			      byte[] payload, File file) throws IOException {
+	DataOutputStream out = new DataOutputStream
+	    (new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	try {
+	    out.writeLong(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeInt(tree.size());
+	    out.writeLong(payload.length);
+	    out.writeLong(0);
+	    writeInts(out, tree.lows);
+	    writeInts(out, tree.highs);
+	    writeInts(out, tree.maxHighs);
+	    for (int i = 0; i < offsets.length; i++) {
+		out.writeLong(offsets[i]);
+	    }
+	    out.write(payload);
+	} finally {
+	    out.close();
+	}
+    }
+
+
+    private static void writeInts(DataOutputStream out, int[] values)
+	throws IOException {
+	for (int i = 0; i < values.length; i++) {
+	    out.writeInt(values[i]);
+	}
+    }
+
+
+
+    public int size() {
+	return this.count;
+    }
+
+
+    public int getLow(int entry) {
+	return this.lows.get(entry);
+    }
+
+
+    public int getHigh(int entry) {
+	return this.highs.get(entry);
+    }
+
+
+    /**
+     * Returns the entry's payload as a read-only view of the mapped
+     * file.
+     */
+    public ByteBuffer payload(int entry) {
+	int from = (int) this.offsets.get(entry);
+	int to = (int) this.offsets.get(entry + 1);
+	ByteBuffer view = this.payload.duplicate();
+	view.limit(to);
+	view.position(from);
+	return view.slice().asReadOnlyBuffer();
+    }
+
+
+    // Returns the first matching entry that we can find, or -1.
+    public int searchEntry(int low, int high) {
+	int k = 0;
+	while (k < this.count) {
+	    if (this.lows.get(k) <= high && low <= this.highs.get(k))
+		return k;
+	    int left = 2 * k + 1;
+	    if (left < this.count && this.maxHighs.get(left) >= low) {
+		k = left;
+	    } else if (this.lows.get(k) <= high) {
+		k = left + 1;
+	    } else {
+		return -1;
+	    }
+	}
+	return -1;
+    }
+
+
+    // Returns the first matching interval that we can find.
+    public Interval search(Interval interval) {
+	int k = searchEntry(interval.getLow(), interval.getHigh());
+	if (k < 0)
+	    return null;
+	return new Interval(this.lows.get(k), this.highs.get(k));
+    }
+
+
+    // Returns all matches as a list of Intervals
+    public List searchAll(Interval interval) {
+	final List results = new ArrayList();
+	forEachOverlappingEntry(interval.getLow(), interval.getHigh(),
+				new EntryVisitor() {
+				    public boolean visit(int entry,
+							 int low, int high) {
+					results.add(new Interval(low, high));
+					return true;
+				    }
+				});
+	return results;
+    }
+
+
+    /**
+     * Hands every entry overlapping [low, high] to the visitor.
+     * Returns false if the visitor stopped the search early.
+     */
+    public boolean forEachOverlappingEntry(int low, int high,
+					   EntryVisitor visitor) {
+	if (this.count == 0)
+	    return true;
+	return _forEach(low, high, 0, visitor);
+    }
+
+
+    private boolean _forEach(int qLow, int qHigh, int k,
+			     EntryVisitor visitor) {
+	int low = this.lows.get(k);
+	int high = this.highs.get(k);
+	if (low <= qHigh && qLow <= high) {
+	    if (! visitor.visit(k, low, high))
+		return false;
+	}
+	int left = 2 * k + 1;
+	if (left < this.count && this.maxHighs.get(left) >= qLow) {
+	    if (! _forEach(qLow, qHigh, left, visitor))
+		return false;
+	}
+	if (left + 1 < this.count && low <= qHigh &&
+	    this.maxHighs.get(left + 1) >= qLow) {
+	    return _forEach(qLow, qHigh, left + 1, visitor);
+	}
+	return true;
+    }
+}
@@ -0,0 +1,219 @@
+package org.arabidopsis.interval;
+
+/**
+ * A read-only Nested Containment List over a fixed set of intervals.
+ *
+ * Intervals are split into sublists so that no interval in a sublist
+ * contains another: anything contained in an interval goes into that
+ * interval's own sublist.  Within a sublist both lows and highs are
+ * then increasing, so a query binary searches for the first high at
+ * or past its low and scans forward until lows pass its high,
+ * descending into the sublists of the matches it meets.
+ *
+ * All sublists are laid out one after another in the same primitive
+ * arrays.  Each sublist remembers the entry that owns it, so queries
+ * climb back out without a stack.
+ */
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class NCList {
+    private static final int NONE = -1;
+
+    // Per entry, in layout order.
+    private final int[] lows;
+    private final int[] highs;
+    private final int[] childSublist;
+    private final Interval[] intervals;
+
+    // Per sublist; sublist 0 is the top level.
+    private final int[] sublistStart;
+    private final int[] sublistEnd;
+    private final int[] parentEntry;
+    private final int[] parentSublist;
+
+
+    public NCList(IntervalTree tree) {
+	this(tree.toArray());
+    }
+
+
+    /**
+     * Builds the list from intervals in any order.
+     */
+    public NCList(Interval[] intervals) {
+	int n = intervals.length;
+	Interval[] sorted = new Interval[n];
+	System.arraycopy(intervals, 0, sorted, 0, n);
+	// By low, and by decreasing high among equal lows, so that a
+	// containing interval always comes before what it contains.
+	Arrays.sort(sorted, new Comparator() {
+		public int compare(Object o1, Object o2) {
+		    Interval a = (Interval) o1;
+		    Interval b = (Interval) o2;
+		    if (a.getLow() != b.getLow())
+			return (a.getLow() < b.getLow() ? -1 : 1);
+		    if (a.getHigh() != b.getHigh())
+			return (a.getHigh() > b.getHigh() ? -1 : 1);
+		    return 0;
+		}
+	    });
+
+	// Find each interval's innermost container with a stack of
+	// open intervals.
+	int[] parent = new int[n];
+	int[] stack = new int[n];
+	int depth = 0;
+	for (int i = 0; i < n; i++) {
+	    while (depth > 0 &&
+		   sorted[stack[depth-1]].getHigh() < sorted[i].getHigh()) {
+		depth--;
+	    }
+	    parent[i] = (depth > 0 ? stack[depth-1] : NONE);
+	    stack[depth++] = i;
+	}
+
+	// Give every interval with children a sublist, and count the
+	// members of each sublist.
+	int[] ownSublist = new int[n];
+	Arrays.fill(ownSublist, NONE);
+	int sublists = 1;
+	for (int i = 0; i < n; i++) {
+	    if (parent[i] != NONE && ownSublist[parent[i]] == NONE)
+		ownSublist[parent[i]] = sublists++;
+	}
+	int[] counts = new int[sublists];
+	for (int i = 0; i < n; i++) {
+	    counts[sublistOf(parent[i], ownSublist)]++;
+	}
+
+	this.sublistStart = new int[sublists];
+	this.sublistEnd = new int[sublists];
+	this.parentEntry = new int[sublists];
+	this.parentSublist = new int[sublists];
+	int offset = 0;
+	for (int s = 0; s < sublists; s++) {
+	    this.sublistStart[s] = offset;
+	    offset += counts[s];
+	    this.sublistEnd[s] = offset;
+	}
+
+	// Lay the entries out; walking in sorted order keeps every
+	// sublist sorted.  A parent always precedes its children, so
+	// its position is known by the time they are placed.
+	this.lows = new int[n];
+	this.highs = new int[n];
+	this.childSublist = new int[n];
+	this.intervals = new Interval[n];
+	int[] fill = new int[sublists];
+	int[] position = new int[n];
+	this.parentEntry[0] = NONE;
+	this.parentSublist[0] = NONE;
+	for (int i = 0; i < n; i++) {
+	    int s = sublistOf(parent[i], ownSublist);
+	    int at = this.sublistStart[s] + fill[s]++;
+	    position[i] = at;
+	    this.lows[at] = sorted[i].getLow();
+	    this.highs[at] = sorted[i].getHigh();
+	    this.intervals[at] = sorted[i];
+	    this.childSublist[at] = ownSublist[i];
+	    if (ownSublist[i] != NONE) {
+		this.parentEntry[ownSublist[i]] = at;
+		this.parentSublist[ownSublist[i]] = s;
+	    }
+	}
+    }
+
+
+    private static int sublistOf(int parent, int[] ownSublist) {
+	return (parent == NONE ? 0 : ownSublist[parent]);
+    }
+
+
+    public int size() {
+	return this.lows.length;
+    }
+
+
+    // Returns the first matching interval that we can find.
+    public Interval search(Interval interval) {
+	// Anything that overlaps has a top level container that overlaps
+	// too, so only the top level needs to be looked at.
+	int i = firstEndingAtOrAfter(0, interval.getLow());
+	if (i < this.sublistEnd[0] && this.lows[i] <= interval.getHigh())
+	    return this.intervals[i];
+	return null;
+    }
+
+
+    // Returns all matches as a list of Intervals
+    public List searchAll(Interval interval) {
+	final List results = new ArrayList();
+	forEachOverlap(interval.getLow(), interval.getHigh(),
+		       new IntervalVisitor() {
+			   public boolean visit(Interval match) {
+			       results.add(match);
+			       return true;
+			   }
+		       });
+	return results;
+    }
+
+
+    public boolean searchAll(Interval interval, IntervalVisitor visitor) {
+	return forEachOverlap(interval.getLow(), interval.getHigh(), visitor);
+    }
+
+
+    /**
+     * Hands every interval overlapping [low, high] to the visitor.
+     * Returns false if the visitor stopped the search early.
+     */
+    public boolean forEachOverlap(int low, int high, IntervalVisitor visitor) {
+	if (this.lows.length == 0)
+	    return true;
+	int s = 0;
+	int end = this.sublistEnd[0];
+	int i = firstEndingAtOrAfter(0, low);
+	while (true) {
+	    if (i < end && this.lows[i] <= high) {
+		if (! visitor.visit(this.intervals[i]))
+		    return false;
+		int child = this.childSublist[i];
+		if (child != NONE) {
+		    s = child;
+		    end = this.sublistEnd[s];
+		    i = firstEndingAtOrAfter(s, low);
+		} else {
+		    i++;
+		}
+	    } else if (s == 0) {
+		return true;
+	    } else {
+		i = this.parentEntry[s] + 1;
+		s = this.parentSublist[s];
+		end = this.sublistEnd[s];
+	    }
+	}
+    }
+
+
+    // Binary search for the first entry of sublist s whose high is at
+    // least pos.  Returns the end of the sublist if there is none.
+    private int firstEndingAtOrAfter(int s, int pos) {
+	int lo = this.sublistStart[s];
+	int hi = this.sublistEnd[s];
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (this.highs[mid] < pos) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+	return lo;
+    }
+}
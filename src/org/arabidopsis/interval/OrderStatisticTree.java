@@ -1,19 +1,13 @@
 package org.arabidopsis.interval;
 
-import java.util.Map;
-import java.util.WeakHashMap;
-
 
+// Subtree sizes are maintained by RbTree itself in RbNode.size, so
+// select, rank and counting all take O(log n) without any lookups.
 public class OrderStatisticTree {
     private RbTree tree;
-    private Map sizes;		// RbNode -> size
-    private OrderStatisticUpdate updater;
 
     public OrderStatisticTree() {
-	this.sizes = new WeakHashMap();
-	this.sizes.put(RbNode.NIL, new Integer(0));
-	this.updater = new OrderStatisticUpdate();
-	this.tree = new RbTree(this.updater);
+	this.tree = new RbTree();
     }
 
 
@@ -22,35 +16,79 @@ public class OrderStatisticTree {
     }
 
 
+    /**
+     * Removes x, which must be a node of this tree.
+     */
+    public void delete(RbNode x) {
+	this.tree.delete(x);
+    }
+
+
+    /**
+     * Returns the node of rank n, counting from 1, or RbNode.NIL if n
+     * is out of range.
+     */
     public RbNode select(int n) {
-	return _select(this.tree.root(), n);
+	RbNode node = this.tree.root();
+	while (! node.isNull()) {
+	    int r = this.size(node.left) + 1;
+	    if (n == r)
+		return node;
+	    if (n < r) {
+		node = node.left;
+	    } else {
+		n -= r;
+		node = node.right;
+	    }
+	}
+	return RbNode.NIL;
     }
 
 
-    // helper function for doing selection
-    private RbNode _select(RbNode node, int i) {
-	if (node.isNull())
-	    return RbNode.NIL;
-	int r = this.size(node.left) + 1;
-	if (i == r)
-	    return node;
-	if (i < r)
-	    return this._select(node.left, i);
-	return this._select(node.right, i - r);
+    /**
+     * Returns the position of x in key order, counting from 1.  x
+     * must be a node of this tree.
+     */
+    public int rank(RbNode x) {
+	assert (! x.isNull());
+	int r = this.size(x.left) + 1;
+	while (! x.parent.isNull()) {
+	    if (x == x.parent.right)
+		r += this.size(x.parent.left) + 1;
+	    x = x.parent;
+	}
+	return r;
     }
 
 
-    // Returns the size of a node.
-    public int size(RbNode node) {
-	assert this.sizes.containsKey(node);
-	return ((Integer) this.sizes.get(node)).intValue();
+    /**
+     * Returns the number of keys less than or equal to key.  For a key
+     * held by a single node, that is the node's rank.
+     */
+    public int rank(int key) {
+	return this.tree.size() - this.tree.countGreater(key);
     }
 
-    
-    class OrderStatisticUpdate implements StatisticUpdate {
-	public void update(RbNode node) {
-	    int n = size(node.left) + size(node.right) + 1;
-	    sizes.put(node, new Integer(n));
-	}
+
+    /**
+     * Returns the number of keys in [lo, hi].
+     */
+    public int countInRange(int lo, int hi) {
+	if (lo > hi)
+	    return 0;
+	return (this.tree.size()
+		- this.tree.countLess(lo)
+		- this.tree.countGreater(hi));
+    }
+
+
+    public int size() {
+	return this.tree.size();
+    }
+
+
+    // Returns the size of a node.
+    public int size(RbNode node) {
+	return node.size;
     }
 }
@@ -0,0 +1,287 @@
+package org.arabidopsis.interval;
+
+/**
+ * A persistent interval tree: nodes are never modified once built.
+ * insert() copies only the O(log n) nodes on the path it touches,
+ * then publishes the new root atomically.  Readers take a
+ * snapshot(), which stays consistent for as long as they hold it no
+ * matter what writers do, and needs no locking.  Old versions become
+ * garbage once nobody refers to them.
+ *
+ * Balancing follows Okasaki's functional red-black insertion, since
+ * nodes have no parent pointers to rotate with.  Each node carries the
+ * same max/min augmentation as IntervalTree, plus its subtree size,
+ * all computed when the node is built.
+ */
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PersistentIntervalTree {
+    private static final boolean BLACK = false;
+    private static final boolean RED = true;
+
+    // Holds the Node at the root of the current version.
+    private final AtomicReference root;
+
+
+    public PersistentIntervalTree() {
+	this.root = new AtomicReference(null);
+    }
+
+
+    /**
+     * Adds an interval.  Safe to call from several threads: a writer
+     * that loses a race to publish simply redoes its path copy on the
+     * newer root.
+     */
+    public void insert(Interval interval) {
+	while (true) {
+	    Node current = (Node) this.root.get();
+	    Node updated = ins(current, interval);
+	    if (updated.color == RED) {
+		updated = new Node(BLACK, updated.left, updated.interval,
+				   updated.right);
+	    }
+	    if (this.root.compareAndSet(current, updated))
+		return;
+	}
+    }
+
+
+    /**
+     * Returns the current version of the tree.  It never changes,
+     * whatever is inserted afterwards.
+     */
+    public Snapshot snapshot() {
+	return new Snapshot((Node) this.root.get());
+    }
+
+
+    public int size() {
+	return snapshot().size();
+    }
+
+
+    public Interval search(Interval interval) {
+	return snapshot().search(interval);
+    }
+
+
+    public List searchAll(Interval interval) {
+	return snapshot().searchAll(interval);
+    }
+
+
+    public boolean forEachOverlap(int low, int high, IntervalVisitor visitor) {
+	return snapshot().forEachOverlap(low, high, visitor);
+    }
+
+
+    private static Node ins(Node node, Interval interval) {
+	if (node == null)
+	    return new Node(RED, null, interval, null);
+	if (interval.getLow() <= node.low) {
+	    return balance(node.color, ins(node.left, interval),
+			   node.interval, node.right);
+	} else {
+	    return balance(node.color, node.left,
+			   node.interval, ins(node.right, interval));
+	}
+    }
+
+
+    // Rebuilds a black node whose child and grandchild are both red
+    // as a red node with two black children.
+    private static Node balance(boolean color, Node left, Interval interval,
+				Node right) {
+	if (color == BLACK) {
+	    if (isRed(left) && isRed(left.left)) {
+		return new Node(RED,
+				black(left.left),
+				left.interval,
+				new Node(BLACK, left.right, interval, right));
+	    }
+	    if (isRed(left) && isRed(left.right)) {
+		return new Node(RED,
+				new Node(BLACK, left.left, left.interval,
+					 left.right.left),
+				left.right.interval,
+				new Node(BLACK, left.right.right, interval,
+					 right));
+	    }
+	    if (isRed(right) && isRed(right.left)) {
+		return new Node(RED,
+				new Node(BLACK, left, interval,
+					 right.left.left),
+				right.left.interval,
+				new Node(BLACK, right.left.right,
+					 right.interval, right.right));
+	    }
+	    if (isRed(right) && isRed(right.right)) {
+		return new Node(RED,
+				new Node(BLACK, left, interval, right.left),
+				right.interval,
+				black(right.right));
+	    }
+	}
+	return new Node(color, left, interval, right);
+    }
+
+
+    private static boolean isRed(Node node) {
+	return node != null && node.color == RED;
+    }
+
+
+    private static Node black(Node node) {
+	return new Node(BLACK, node.left, node.interval, node.right);
+    }
+
+
+
+    private static class Node {
+	final boolean color;
+	final Node left;
+	final Node right;
+	final Interval interval;
+	final int low;
+	final int high;
+	final int maxHigh;
+	final int minLow;
+	final int size;
+
+	Node(boolean color, Node left, Interval interval, Node right) {
+	    this.color = color;
+	    this.left = left;
+	    this.right = right;
+	    this.interval = interval;
+	    this.low = interval.getLow();
+	    this.high = interval.getHigh();
+
+	    int max = this.high;
+	    int min = this.low;
+	    int size = 1;
+	    if (left != null) {
+		max = Math.max(max, left.maxHigh);
+		min = Math.min(min, left.minLow);
+		size += left.size;
+	    }
+	    if (right != null) {
+		max = Math.max(max, right.maxHigh);
+		min = Math.min(min, right.minLow);
+		size += right.size;
+	    }
+	    this.maxHigh = max;
+	    this.minLow = min;
+	    this.size = size;
+	}
+    }
+
+
+
+    /**
+     * One immutable version of a PersistentIntervalTree.
+     */
+    public static class Snapshot {
+	private final Node root;
+
+	private Snapshot(Node root) {
+	    this.root = root;
+	}
+
+
+	public int size() {
+	    return (this.root == null ? 0 : this.root.size);
+	}
+
+
+	// Returns the first matching interval that we can find.
+	public Interval search(Interval interval) {
+	    int low = interval.getLow();
+	    int high = interval.getHigh();
+	    Node node = this.root;
+	    while (node != null) {
+		if (node.low <= high && low <= node.high)
+		    return node.interval;
+		if (node.left != null && node.left.maxHigh >= low) {
+		    node = node.left;
+		} else if (node.right != null && node.right.minLow <= high) {
+		    node = node.right;
+		} else {
+		    return null;
+		}
+	    }
+	    return null;
+	}
+
+
+	// Returns all matches as a list of Intervals
+	public List searchAll(Interval interval) {
+	    final List results = new ArrayList();
+	    forEachOverlap(interval.getLow(), interval.getHigh(),
+			   new IntervalVisitor() {
+			       public boolean visit(Interval match) {
+				   results.add(match);
+				   return true;
+			       }
+			   });
+	    return results;
+	}
+
+
+	/**
+	 * Hands every interval overlapping [low, high] to the visitor.
+	 * Returns false if the visitor stopped the search early.
+	 */
+	public boolean forEachOverlap(int low, int high,
+				      IntervalVisitor visitor) {
+	    if (this.root == null)
+		return true;
+	    return _forEachOverlap(low, high, this.root, visitor);
+	}
+
+
+	private boolean _forEachOverlap(int low, int high, Node node,
+					IntervalVisitor visitor) {
+	    if (node.low <= high && low <= node.high) {
+		if (! visitor.visit(node.interval))
+		    return false;
+	    }
+	    if (node.left != null && node.left.maxHigh >= low) {
+		if (! _forEachOverlap(low, high, node.left, visitor))
+		    return false;
+	    }
+	    if (node.right != null && node.right.minLow <= high) {
+		return _forEachOverlap(low, high, node.right, visitor);
+	    }
+	    return true;
+	}
+
+
+	/**
+	 * Test code: checks the red-black properties.  The augmented
+	 * fields are computed by the Node constructor, so they are
+	 * correct by construction.  Expensive; for tests only.
+	 */
+	public boolean isValid() {
+	    return ((! isRed(this.root)) &&
+		    blackHeight(this.root) >= 0);
+	}
+
+
+	// Returns the black height, or -1 if the constraints fail.
+	private int blackHeight(Node node) {
+	    if (node == null)
+		return 0;
+	    if (isRed(node) && (isRed(node.left) || isRed(node.right)))
+		return -1;
+	    int leftHeight = blackHeight(node.left);
+	    int rightHeight = blackHeight(node.right);
+	    if (leftHeight < 0 || leftHeight != rightHeight)
+		return -1;
+	    return leftHeight + (node.color == BLACK ? 1 : 0);
+	}
+    }
+}
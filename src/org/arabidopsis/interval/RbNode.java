@@ -8,41 +8,51 @@ public class RbNode {
     public RbNode parent;
     public RbNode left;
     public RbNode right;
+    // Number of nodes in the subtree rooted here, maintained by RbTree.
+    public int size;
 
-    public static boolean BLACK = false;
-    public static boolean RED = true;
+    public static final boolean BLACK = false;
+    public static final boolean RED = true;
 
-    private RbNode() {
+    // True only for NIL sentinels.
+    private final boolean nil;
+
+    RbNode() {
 	// Default constructor is only meant to be used for the
-	// construction of the NIL node.
+	// construction of NIL nodes.
+	this.nil = true;
+	this.color = BLACK;
+	this.parent = this;
+	this.left = this;
+	this.right = this;
+	this.size = 0;
     }
 
     public RbNode(int key) {
+	this.nil = false;
 	this.parent = NIL;
 	this.left = NIL;
 	this.right = NIL;
 	this.key = key;
 	this.color = RED;
+	this.size = 1;
     }
 
 
-    static RbNode NIL;
-    static {
-	NIL = new RbNode();
-	NIL.color = BLACK;
-	NIL.parent = NIL;
-	NIL.left = NIL;
-	NIL.right = NIL;
-    }
+    // Every RbTree owns its own NIL sentinel and writes to it, so
+    // that trees on different threads share no mutable state.  This
+    // one only marks the links of nodes that are not in any tree,
+    // and nothing ever writes to it.
+    static final RbNode NIL = new RbNode();
 
 
     public boolean isNull() {
-	return this == NIL;
+	return this.nil;
     }
 
 
     public String toString() {
-	if (this == NIL) { return "nil"; }
+	if (this.nil) { return "nil"; }
 	return 
 	    "(" + this.key + " " + (this.color == RED ? "RED" : "BLACK") +
 	    " (" + this.left.toString() + ", " + this.right.toString() + ")";
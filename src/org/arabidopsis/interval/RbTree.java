@@ -5,6 +5,9 @@ package org.arabidopsis.interval;
 // to the pseudocode described in 'Introduction to Algorithms'
 // by CLR.
 
+// Every RbNode's size field (the number of nodes in its subtree) is
+// kept up to date along the same paths, so size() is constant time.
+//
 // This implementation also can take in a StatisticUpdate instance to
 // maintain auxillary information for each RbNode.  We call update()
 // whenever an RbNode is inserted, in two phases:
@@ -12,6 +15,9 @@ package org.arabidopsis.interval;
 // 1.  Insertion as a leaf.
 // 2.  Rotation to maintain red-black invariants.
 //
+// Deletion does the same: update() is applied from the point where
+// a node was spliced out, and again on every rotation of the fixup.
+//
 // update() is propagated up ancestors, although this might be
 // overkill.
 
@@ -19,11 +25,21 @@ import org.apache.log4j.Logger;
 
 public class RbTree {
     RbNode root;
-    RbNode NIL = RbNode.NIL;
+    // This tree's own sentinel; see RbNode.NIL.
+    final RbNode NIL;
     StatisticUpdate updater;
     Logger logger;
 
     public RbTree(StatisticUpdate updater) {
+	this(updater, new RbNode());
+    }
+
+
+    // For trees whose updater needs NIL to be a particular RbNode
+    // subclass.  nil must be a fresh sentinel used by no other tree.
+    RbTree(StatisticUpdate updater, RbNode nil) {
+	assert nil.isNull();
+	this.NIL = nil;
 	this.root = NIL;
 	this.updater = updater;
 	this.logger = Logger.getLogger(this.getClass());
@@ -81,6 +97,166 @@ public class RbTree {
 
 
 
+    /**
+     * Replaces the contents of the tree with the given nodes, which
+     * must already be sorted by key.  The tree is built bottom-up in
+     * linear time: it is perfectly balanced, every level but the
+     * deepest is black, and the deepest level is red.  Sizes and the
+     * statistic update are computed once per node, in postorder.
+     */
+    public void bulkLoad(RbNode[] nodes) {
+	for (int i = 1; i < nodes.length; i++) {
+	    if (nodes[i].key < nodes[i-1].key)
+		throw new IllegalArgumentException
+		    ("nodes are not sorted at index " + i);
+	}
+	int redDepth = 0;
+	for (int n = nodes.length; n > 1; n >>= 1) {
+	    redDepth++;
+	}
+	this.root = this.build(nodes, 0, nodes.length - 1, 0, redDepth, NIL);
+	this.root.color = RbNode.BLACK;
+    }
+
+
+    private RbNode build(RbNode[] nodes, int from, int to,
+			 int depth, int redDepth, RbNode parent) {
+	if (from > to)
+	    return NIL;
+	int mid = (from + to) >>> 1;
+	RbNode node = nodes[mid];
+	node.parent = parent;
+	node.left = this.build(nodes, from, mid - 1, depth + 1, redDepth, node);
+	node.right = this.build(nodes, mid + 1, to, depth + 1, redDepth, node);
+	node.color = (depth == redDepth ? RbNode.RED : RbNode.BLACK);
+	node.size = node.left.size + node.right.size + 1;
+	if (this.updater != null)
+	    this.updater.update(node);
+	return node;
+    }
+
+
+    /**
+     * Removes z from the tree.  z must currently be a node of this
+     * tree; afterwards it is linked to no tree at all.
+     */
+    public void delete(RbNode z) {
+	assert (z != null);
+	assert (! z.isNull());
+
+	RbNode y = z;
+	boolean yOriginalColor = y.color;
+	RbNode x;
+	if (z.left == NIL) {
+	    x = z.right;
+	    this.transplant(z, z.right);
+	} else if (z.right == NIL) {
+	    x = z.left;
+	    this.transplant(z, z.left);
+	} else {
+	    y = this.minimum(z.right);
+	    yOriginalColor = y.color;
+	    x = y.right;
+	    if (y.parent == z) {
+		x.parent = y;
+	    } else {
+		this.transplant(y, y.right);
+		y.right = z.right;
+		y.right.parent = y;
+	    }
+	    this.transplant(z, y);
+	    y.left = z.left;
+	    y.left.parent = y;
+	    y.color = z.color;
+	}
+
+	// x.parent is the lowest node whose subtree changed, even
+	// when x is NIL.
+	this.applyUpdate(x.parent);
+
+	if (yOriginalColor == RbNode.BLACK) {
+	    this.deleteFixup(x);
+	}
+
+	// The fixup may have used NIL.parent as scratch space.
+	NIL.parent = NIL;
+	z.parent = z.left = z.right = RbNode.NIL;
+	z.size = 1;
+    }
+
+
+    private void deleteFixup(RbNode x) {
+	while (x != this.root && x.color == RbNode.BLACK) {
+	    if (x == x.parent.left) {
+		RbNode w = x.parent.right;
+		if (w.color == RbNode.RED) {
+		    w.color = RbNode.BLACK;
+		    x.parent.color = RbNode.RED;
+		    this.leftRotate(x.parent);
+		    w = x.parent.right;
+		}
+		if (w.left.color == RbNode.BLACK &&
+		    w.right.color == RbNode.BLACK) {
+		    w.color = RbNode.RED;
+		    x = x.parent;
+		} else {
+		    if (w.right.color == RbNode.BLACK) {
+			w.left.color = RbNode.BLACK;
+			w.color = RbNode.RED;
+			this.rightRotate(w);
+			w = x.parent.right;
+		    }
+		    w.color = x.parent.color;
+		    x.parent.color = RbNode.BLACK;
+		    w.right.color = RbNode.BLACK;
+		    this.leftRotate(x.parent);
+		    x = this.root;
+		}
+	    } else {
+		RbNode w = x.parent.left;
+		if (w.color == RbNode.RED) {
+		    w.color = RbNode.BLACK;
+		    x.parent.color = RbNode.RED;
+		    this.rightRotate(x.parent);
+		    w = x.parent.left;
+		}
+		if (w.right.color == RbNode.BLACK &&
+		    w.left.color == RbNode.BLACK) {
+		    w.color = RbNode.RED;
+		    x = x.parent;
+		} else {
+		    if (w.left.color == RbNode.BLACK) {
+			w.right.color = RbNode.BLACK;
+			w.color = RbNode.RED;
+			this.leftRotate(w);
+			w = x.parent.left;
+		    }
+		    w.color = x.parent.color;
+		    x.parent.color = RbNode.BLACK;
+		    w.left.color = RbNode.BLACK;
+		    this.rightRotate(x.parent);
+		    x = this.root;
+		}
+	    }
+	}
+	x.color = RbNode.BLACK;
+    }
+
+
+    // Replaces the subtree rooted at u with the one rooted at v.
+    private void transplant(RbNode u, RbNode v) {
+	if (u.parent == NIL) {
+	    this.root = v;
+	} else if (u == u.parent.left) {
+	    u.parent.left = v;
+	} else {
+	    u.parent.right = v;
+	}
+	v.parent = u.parent;
+    }
+
+
+
     public RbNode get(int key) {
 	RbNode node = this.root;
 	while (node != NIL) {
@@ -98,6 +274,44 @@ public class RbTree {
     }
 
 
+    /**
+     * Returns the number of nodes whose key is less than the given
+     * one, in O(log n) using the subtree sizes.
+     */
+    public int countLess(int key) {
+	int count = 0;
+	RbNode node = this.root;
+	while (node != NIL) {
+	    if (node.key < key) {
+		count += node.left.size + 1;
+		node = node.right;
+	    } else {
+		node = node.left;
+	    }
+	}
+	return count;
+    }
+
+
+    /**
+     * Returns the number of nodes whose key is greater than the given
+     * one, in O(log n).
+     */
+    public int countGreater(int key) {
+	int count = 0;
+	RbNode node = this.root;
+	while (node != NIL) {
+	    if (node.key > key) {
+		count += node.right.size + 1;
+		node = node.left;
+	    } else {
+		node = node.right;
+	    }
+	}
+	return count;
+    }
+
+
     public RbNode root() {
 	return this.root;
     }
@@ -214,19 +428,19 @@ public class RbTree {
 	RbNode y = NIL;
 	while(node != NIL) {
 	    y = node;
-	    if (x.key <= node.key) {
+	    if (this.goesLeft(x, node)) {
 		node = node.left;
 	    } else {
 		node = node.right;
 	    }
 	}
 	x.parent = y;
+	x.left = x.right = NIL;
 	
 	if (y == NIL) {
 	    this.root = x;
-	    x.left = x.right = NIL;
 	} else {
-	    if (x.key <= y.key) {
+	    if (this.goesLeft(x, y)) {
 		y.left = x;
 	    } else {
 		y.right = x;
@@ -237,12 +451,20 @@ public class RbTree {
     }
 
 
-    // Applies the statistic update on the node and its ancestors.
+    // True if x belongs in node's left subtree.  Trees whose nodes
+    // are not ordered by the int key override this.
+    boolean goesLeft(RbNode x, RbNode node) {
+	return x.key <= node.key;
+    }
+
+
+    // Recomputes the subtree size and applies the statistic update
+    // on the node and its ancestors.
     private void applyUpdate(RbNode node) {
-	if (this.updater == null)
-	    return;
 	while (! node.isNull()) {
-	    this.updater.update(node);
+	    node.size = node.left.size + node.right.size + 1;
+	    if (this.updater != null)
+		this.updater.update(node);
 	    node = node.parent;
 	}
     }
@@ -252,14 +474,7 @@ public class RbTree {
      * Returns the number of nodes in the tree.
      */
     public int size() {
-	return _size(this.root);
-    }
-
-
-    private int _size(RbNode node) {
-	if (node.isNull())
-	    return 0;
-	return 1 + _size(node.left) + _size(node.right);
+	return this.root.size;
     }
 
 
@@ -0,0 +1,94 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+
+public class TestArrayIntervalTree extends TestCase {
+    private ArrayIntervalTree tree;
+
+    public void setUp() {
+	// Start small so that the tests exercise growing the arrays.
+	this.tree = new ArrayIntervalTree(1);
+    }
+
+    public void tearDown() {
+	this.tree = null;
+    }
+
+
+    public void testEmptyCase() {
+	assertEquals(null, this.tree.search(new Interval(0, 42)));
+	assertEquals(new ArrayList(), this.tree.searchAll(new Interval(0, 42)));
+	assertEquals(0, this.tree.size());
+	assertTrue(this.tree.isValid());
+    }
+
+
+    public void testInsertReturnsSlot() {
+	int index = tree.insert(3, 7);
+	assertEquals(3, tree.getLow(index));
+	assertEquals(7, tree.getHigh(index));
+	for (int i = 0; i < 100; i++) {
+	    tree.insert(i, i + 1);
+	}
+	assertEquals(3, tree.getLow(index));
+	assertEquals(7, tree.getHigh(index));
+    }
+
+
+    public void testMultipleSearch() {
+	Interval[] clr = IntervalTestSupport.clrIntervals();
+	for (int i = 0; i < clr.length; i++) {
+	    tree.insert(clr[i]);
+	}
+	assertTrue(tree.isValid());
+	assertEquals(10, tree.size());
+
+	List expected = new ArrayList();
+	expected.add(new Interval(0, 3));
+	expected.add(new Interval(5, 8));
+	expected.add(new Interval(6, 10));
+	List results = tree.searchAll(new Interval(1, 7));
+	Collections.sort(results);
+	assertEquals(expected, results);
+	assertEquals(null, tree.search(new Interval(11, 14)));
+	assertEquals(new Interval(25, 30), tree.search(new Interval(24, 25)));
+    }
+
+
+    public void testAgreesWithIntervalTree() {
+	Random random = new Random(7);
+	IntervalTree reference = new IntervalTree();
+	for (int i = 0; i < 5000; i++) {
+	    int low = random.nextInt(100000);
+	    Interval interval = new Interval(low, low + random.nextInt(500));
+	    reference.insert(interval);
+	    tree.insert(interval);
+	}
+	assertTrue(tree.isValid());
+	assertEquals(reference.size(), tree.size());
+
+	for (int i = 0; i < 500; i++) {
+	    int low = random.nextInt(100000);
+	    Interval query = new Interval(low, low + random.nextInt(1000));
+	    List expected = reference.searchAll(query);
+	    List actual = tree.searchAll(query);
+	    Collections.sort(expected);
+	    Collections.sort(actual);
+	    assertEquals(expected, actual);
+	}
+    }
+
+
+    public void testSortedInsertsStayBalanced() {
+	for (int i = 0; i < 30000; i++) {
+	    tree.insert(i, i);
+	}
+	assertTrue(tree.isValid());
+	assertEquals(30000, tree.searchAll(new Interval(0, 30000)).size());
+    }
+}
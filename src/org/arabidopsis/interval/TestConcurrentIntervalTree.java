@@ -0,0 +1,162 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+
+public class TestConcurrentIntervalTree extends TestCase {
+    private ConcurrentIntervalTree tree;
+
+    public void setUp() {
+	this.tree = new ConcurrentIntervalTree();
+    }
+
+    public void tearDown() {
+	this.tree = null;
+    }
+
+
+    public void testEmptyCase() {
+	assertEquals(0, tree.size());
+	assertEquals(null, tree.search(new Interval(0, 42)));
+	assertEquals(new ArrayList(), tree.searchAll(new Interval(0, 42)));
+    }
+
+
+    public void testSingleThreaded() {
+	tree.insert(new Interval(0, 3));
+	tree.insertAll(new Interval[] { new Interval(5, 8),
+					new Interval(6, 10) });
+	assertEquals(3, tree.size());
+	List expected = new ArrayList();
+	expected.add(new Interval(5, 8));
+	expected.add(new Interval(6, 10));
+	List results = tree.searchAll(new Interval(7, 7));
+	Collections.sort(results);
+	assertEquals(expected, results);
+	assertEquals(new Interval(0, 3), tree.search(new Interval(1, 1)));
+
+	assertTrue(tree.remove(new Interval(5, 8)));
+	assertEquals(1, tree.searchAll(new Interval(7, 7)).size());
+	assertEquals(2, tree.size());
+    }
+
+
+    public void testBulkLoadUnsorted() {
+	tree.insert(new Interval(20, 25));
+	tree.bulkLoadUnsorted(new Interval[] { new Interval(6, 10),
+					       new Interval(0, 3),
+					       new Interval(5, 8) });
+	assertEquals(4, tree.size());
+	List expected = new ArrayList();
+	expected.add(new Interval(5, 8));
+	expected.add(new Interval(6, 10));
+	List results = tree.searchAll(new Interval(7, 7));
+	Collections.sort(results);
+	assertEquals(expected, results);
+	assertEquals(new Interval(20, 25), tree.search(new Interval(22, 30)));
+    }
+
+
+    // Each writer inserts disjoint points while readers search; every
+    // reader result must be a subset of what gets inserted, and in
+    // the end everything must be there.
+    public void testConcurrentReadersAndWriters() throws Exception {
+	final int writers = 4;
+	final int perWriter = 2000;
+	final Throwable[] failure = new Throwable[1];
+	Thread[] threads = new Thread[writers + 4];
+	for (int t = 0; t < threads.length; t++) {
+	    final int id = t;
+	    threads[t] = new Thread() {
+		    public void run() {
+			try {
+			    if (id < writers) {
+				for (int i = 0; i < perWriter; i++) {
+				    int pos = i * writers + id;
+				    tree.insert(new Interval(pos, pos));
+				}
+			    } else {
+				Random random = new Random(id);
+				for (int i = 0; i < 5000; i++) {
+				    int pos = random.nextInt(writers * perWriter);
+				    List found = tree.searchAll
+					(new Interval(pos, pos + 3));
+				    assertTrue(found.size() <= 4);
+				    for (int j = 0; j < found.size(); j++) {
+					int low = ((Interval) found.get(j)).getLow();
+					assertTrue(low >= pos && low <= pos + 3);
+				    }
+				}
+			    }
+			} catch (Throwable e) {
+			    failure[0] = e;
+			}
+		    }
+		};
+	    threads[t].start();
+	}
+	for (int t = 0; t < threads.length; t++) {
+	    threads[t].join();
+	}
+	if (failure[0] != null)
+	    throw new RuntimeException(failure[0]);
+	assertEquals(writers * perWriter, tree.size());
+	assertEquals(writers * perWriter,
+		     tree.searchAll(new Interval(0, writers * perWriter)).size());
+    }
+
+
+    // Writers keep inserting and removing points between a fixed set
+    // of others, which rotates the tree under readers' feet.  Readers
+    // must still find each fixed point, and only it.
+    public void testSearchesDuringRemoves() throws Exception {
+	final int fixed = 1000;
+	Interval[] initial = new Interval[fixed];
+	for (int i = 0; i < fixed; i++) {
+	    initial[i] = new Interval(10 * i, 10 * i);
+	}
+	tree.bulkLoadUnsorted(initial);
+	final int writers = 2;
+	final Throwable[] failure = new Throwable[1];
+	Thread[] threads = new Thread[writers + 4];
+	for (int t = 0; t < threads.length; t++) {
+	    final int id = t;
+	    threads[t] = new Thread() {
+		    public void run() {
+			try {
+			    Random random = new Random(id);
+			    for (int i = 0; i < 20000; i++) {
+				int pos = 10 * random.nextInt(fixed);
+				if (id < writers) {
+				    Interval moving = new Interval(pos + 5,
+								   pos + 5);
+				    tree.insert(moving);
+				    tree.remove(moving);
+				} else {
+				    Interval point = new Interval(pos, pos);
+				    assertEquals(point, tree.search(point));
+				    List found = tree.searchAll
+					(new Interval(pos - 1, pos + 1));
+				    assertEquals(1, found.size());
+				    assertEquals(point, found.get(0));
+				}
+			    }
+			} catch (Throwable e) {
+			    failure[0] = e;
+			}
+		    }
+		};
+	    threads[t].start();
+	}
+	for (int t = 0; t < threads.length; t++) {
+	    threads[t].join();
+	}
+	if (failure[0] != null)
+	    throw new RuntimeException(failure[0]);
+	assertEquals(fixed, tree.size());
+    }
+}
@@ -0,0 +1,105 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+
+
+public class TestFeatureLoader extends TestCase {
+    private File file;
+    private GenomeIntervalIndex index;
+
+    public void setUp() throws IOException {
+	this.file = File.createTempFile("features", ".txt");
+	this.index = new GenomeIntervalIndex();
+    }
+
+    public void tearDown() {
+	this.file.delete();
+	this.file = null;
+	this.index = null;
+    }
+
+
+    private void writeFile(String contents) throws IOException {
+	FileOutputStream out = new FileOutputStream(this.file);
+	out.write(contents.getBytes("US-ASCII"));
+	out.close();
+    }
+
+
+    public void testBed() throws IOException {
+	writeFile("track name=genes\n" +
+		  "# a comment\n" +
+		  "chr1\t11648\t13611\tAt1g01030.1\t0\t+\n" +
+		  "chr1\t23145\t31164\n" +
+		  "\n" +
+		  "chr2\t100\t100\r\n" +
+		  "chr2\t500\t600");
+	FeatureLoader.Stats stats =
+	    new FeatureLoader(index).load(file, FeatureLoader.BED);
+	assertEquals(7, stats.lines);
+	assertEquals(4, stats.features);
+	assertEquals(4, index.size());
+
+	assertEquals(new Interval(11649, 13611),
+		     index.search("chr1", new Interval(11649, 11649)));
+	assertEquals(null, index.search("chr1", new Interval(11648, 11648)));
+	assertEquals(new Interval(101, 101),
+		     index.search("chr2", new Interval(101, 101)));
+	assertEquals(new Interval(501, 600),
+		     index.search("chr2", new Interval(600, 700)));
+    }
+
+
+    public void testGff() throws IOException {
+	writeFile("##gff-version 3\n" +
+		  "Chr1\tTAIR\tgene\t3631\t5899\t.\t+\t.\tID=AT1G01010\n" +
+		  "Chr1\tTAIR\tgene\t5928\t8737\t.\t-\t.\tID=AT1G01020\n" +
+		  "Chr2\tTAIR\tgene\t1025\t2810\t.\t+\t.\tID=AT2G01008\n");
+	FeatureLoader.Stats stats =
+	    new FeatureLoader(index).load(file, FeatureLoader.GFF);
+	assertEquals(3, stats.features);
+	List expected = new ArrayList();
+	expected.add(new Interval(5928, 8737));
+	assertEquals(expected, index.searchAll("Chr1", new Interval(5900, 5930)));
+	assertEquals(new Interval(1025, 2810),
+		     index.search("Chr2", new Interval(2810, 2810)));
+    }
+
+
+    // Enough lines to span several reads, out of order on one contig.
+    public void testLargeFile() throws IOException {
+	StringBuffer contents = new StringBuffer();
+	int lines = 100000;
+	for (int i = 0; i < lines; i++) {
+	    int start = (i % 2 == 0 ? i : lines - i) * 10;
+	    contents.append(i % 3 == 0 ? "chrA" : "chrB")
+		.append('\t').append(start)
+		.append('\t').append(start + 5)
+		.append('\n');
+	}
+	writeFile(contents.toString());
+	FeatureLoader.Stats stats =
+	    new FeatureLoader(index).load(file, FeatureLoader.BED);
+	assertEquals(lines, stats.features);
+	assertEquals(lines, index.size());
+	assertTrue(index.tree(index.lookupContig("chrA")).isValid());
+	assertTrue(index.tree(index.lookupContig("chrB")).isValid());
+	assertTrue(stats.linesPerSecond() > 0);
+    }
+
+
+    public void testMalformedLine() throws IOException {
+	writeFile("chr1\t100\tabc\n");
+	try {
+	    new FeatureLoader(index).load(file, FeatureLoader.BED);
+	    fail();
+	} catch (IOException e) {
+	    assertTrue(e.getMessage().indexOf("line 1") >= 0);
+	}
+    }
+}
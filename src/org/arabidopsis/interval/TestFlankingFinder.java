@@ -104,4 +104,74 @@ public class TestFlankingFinder extends TestCase {
     }
 
 
+
+    public void testRemove() {
+	this.finder.add("At1g01060.1", 33666, 37840);
+	this.finder.add("At1g01060.2", 33666, 37840);
+	this.finder.add("At1g01070.1", 38753, 40944);
+
+	assertFalse(this.finder.remove("At1g01060.1", 33666, 40000));
+	assertTrue(this.finder.remove("At1g01060.1", 33666, 37840));
+	assertFalse(this.finder.remove("At1g01060.1", 33666, 37840));
+
+	assertEquals(Arrays.asList(new String[] {
+	    "At1g01070.1",
+	    "At1g01060.2"}),
+		     this.finder.flankingLeft(45000, 3));
+	assertEquals(Arrays.asList(new String[] {
+	    "At1g01060.2",
+	    "At1g01070.1"}),
+		     this.finder.flankingRight(20000, 3));
+    }
+
+
+    public void testRemoveWithDuplicates() {
+	int bignumber = 100;
+	for (int i = 0; i < bignumber; i++) {
+	    this.finder.add("foo", i, i);
+	    this.finder.add("foo", i, i);
+	}
+	for (int i = 0; i < bignumber; i++) {
+	    assertTrue(this.finder.remove("foo", i, i));
+	}
+	assertEquals(bignumber,
+		     this.finder.flankingRight(-1, Integer.MAX_VALUE).size());
+	assertEquals(bignumber,
+		     this.finder.flankingLeft(bignumber, Integer.MAX_VALUE).size());
+    }
+
+
+    public void testBatchMatchesSingleQueries() {
+	java.util.Random random = new java.util.Random(23);
+	for (int i = 0; i < 500; i++) {
+	    int low = random.nextInt(10000);
+	    // Plenty of shared coordinates.
+	    low -= low % 50;
+	    this.finder.add("f" + i, low, low + random.nextInt(3) * 100);
+	}
+	int[] sorted = new int[300];
+	for (int i = 0; i < sorted.length; i++) {
+	    sorted[i] = random.nextInt(10400) - 200;
+	}
+	Arrays.sort(sorted);
+	int[] unsorted = new int[sorted.length];
+	for (int i = 0; i < unsorted.length; i++) {
+	    unsorted[i] = random.nextInt(10400) - 200;
+	}
+
+	int[][] batches = { sorted, unsorted };
+	for (int b = 0; b < batches.length; b++) {
+	    int[] positions = batches[b];
+	    List[] left = this.finder.flankingLeft(positions, 5);
+	    List[] right = this.finder.flankingRight(positions, 5);
+	    assertEquals(positions.length, left.length);
+	    for (int i = 0; i < positions.length; i++) {
+		assertEquals(this.finder.flankingLeft(positions[i], 5),
+			     left[i]);
+		assertEquals(this.finder.flankingRight(positions[i], 5),
+			     right[i]);
+	    }
+	}
+	assertEquals(0, this.finder.flankingLeft(new int[0], 3).length);
+    }
 }
@@ -0,0 +1,83 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+public class TestFrozenIntervalTree extends TestCase {
+    private IntervalTree tree;
+
+    public void setUp() {
+	this.tree = new IntervalTree();
+    }
+
+    public void tearDown() {
+	this.tree = null;
+    }
+
+
+    public void testEmptyCase() {
+	FrozenIntervalTree frozen = tree.freeze();
+	assertEquals(0, frozen.size());
+	assertEquals(null, frozen.search(new Interval(0, 42)));
+	assertEquals(new ArrayList(), frozen.searchAll(new Interval(0, 42)));
+    }
+
+
+    public void testFreezeIsASnapshot() {
+	tree.insert(new Interval(0, 3));
+	tree.insert(new Interval(5, 8));
+	tree.insert(new Interval(6, 10));
+	FrozenIntervalTree frozen = tree.freeze();
+	tree.insert(new Interval(4, 4));
+
+	assertEquals(3, frozen.size());
+	assertEquals(null, frozen.search(new Interval(4, 4)));
+	List expected = new ArrayList();
+	expected.add(new Interval(5, 8));
+	expected.add(new Interval(6, 10));
+	List results = frozen.searchAll(new Interval(4, 6));
+	assertEquals(expected, IntervalTestSupport.sorted(results));
+    }
+
+
+    public void testAgreesWithIntervalTreeAtManySizes() {
+	Random random = new Random(9);
+	for (int n = 1; n < 300; n += 7) {
+	    setUp();
+	    for (int i = 0; i < n; i++) {
+		int low = random.nextInt(1000);
+		tree.insert(new Interval(low, low + random.nextInt(40)));
+	    }
+	    FrozenIntervalTree frozen = tree.freeze();
+	    for (int i = 0; i < 50; i++) {
+		int low = random.nextInt(1100) - 50;
+		Interval query = new Interval(low, low + random.nextInt(20));
+		assertEquals
+		    (IntervalTestSupport.sorted(tree.searchAll(query)),
+		     IntervalTestSupport.sorted(frozen.searchAll(query)));
+		Interval found = frozen.search(query);
+		assertEquals(tree.search(query) == null, found == null);
+		if (found != null)
+		    assertTrue(found.overlaps(query));
+	    }
+	}
+    }
+
+
+    public void testVisitorCanStopEarly() {
+	for (int i = 0; i < 100; i++) {
+	    tree.insert(new Interval(0, i));
+	}
+	final int[] count = new int[1];
+	assertFalse(tree.freeze().forEachOverlap(50, 60, new IntervalVisitor() {
+		public boolean visit(Interval interval) {
+		    count[0]++;
+		    return count[0] < 5;
+		}
+	    }));
+	assertEquals(5, count[0]);
+    }
+}
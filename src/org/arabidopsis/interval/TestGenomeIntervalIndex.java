@@ -0,0 +1,101 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+public class TestGenomeIntervalIndex extends TestCase {
+    private GenomeIntervalIndex index;
+
+    public void setUp() {
+	this.index = new GenomeIntervalIndex();
+    }
+
+    public void tearDown() {
+	this.index = null;
+    }
+
+
+    public void testContigIds() {
+	assertEquals(-1, index.lookupContig("chr1"));
+	int chr1 = index.contigId("chr1");
+	int chr2 = index.contigId("chr2");
+	assertTrue(chr1 != chr2);
+	assertEquals(chr1, index.contigId("chr1"));
+	assertEquals(chr2, index.lookupContig("chr2"));
+	assertEquals("chr2", index.contigName(chr2));
+	assertEquals(2, index.contigCount());
+	try {
+	    index.tree(5);
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // expected
+	}
+    }
+
+
+    public void testContigsAreSeparate() {
+	index.add("chr1", new Interval(10, 20));
+	index.add("chr2", new Interval(15, 25));
+	assertEquals(0, index.size());
+	index.build();
+	assertEquals(2, index.size());
+
+	assertEquals(new Interval(10, 20),
+		     index.search("chr1", new Interval(12, 12)));
+	assertEquals(null, index.search("chr1", new Interval(22, 22)));
+	assertEquals(new Interval(15, 25),
+		     index.search("chr2", new Interval(22, 22)));
+	assertEquals(new ArrayList(),
+		     index.searchAll("chrX", new Interval(0, 100)));
+
+	index.insert(index.lookupContig("chr1"), new Interval(21, 22));
+	assertEquals(1, index.searchAll(index.lookupContig("chr1"),
+					new Interval(22, 22)).size());
+    }
+
+
+    public void testBuildIsIncremental() {
+	index.add("chr1", new Interval(10, 20));
+	index.build();
+	index.add("chr1", new Interval(30, 40));
+	index.build();
+	assertEquals(2, index.size());
+	assertTrue(index.tree(index.lookupContig("chr1")).isValid());
+    }
+
+
+    public void testManyContigsAndBatchQueries() {
+	Random random = new Random(13);
+	int contigs = 40;
+	for (int i = 0; i < 20000; i++) {
+	    int low = random.nextInt(10000);
+	    index.add("scaffold" + random.nextInt(contigs),
+		      new Interval(low, low + random.nextInt(200)));
+	}
+	ForkJoinPool pool = new ForkJoinPool(4);
+	try {
+	    index.build(pool);
+	    assertEquals(20000, index.size());
+
+	    int[] ids = new int[3000];
+	    Interval[] queries = new Interval[ids.length];
+	    for (int i = 0; i < ids.length; i++) {
+		ids[i] = index.contigId("scaffold" + random.nextInt(contigs));
+		int low = random.nextInt(10000);
+		queries[i] = new Interval(low, low + random.nextInt(50));
+	    }
+	    List[] results = index.searchAllBatch(ids, queries, pool);
+	    for (int i = 0; i < ids.length; i++) {
+		List expected = index.searchAll(ids[i], queries[i]);
+		assertEquals(IntervalTestSupport.sorted(expected),
+			     IntervalTestSupport.sorted(results[i]));
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+    }
+}
@@ -203,11 +203,11 @@ public class TestIntervalTree extends TestCase {
 	assertTrue(tree.isValid());
 
 	/* At this point, the tree has something that looks like
-         -
-         --
-         ---
-         ----
-         ...
+	 -
+	 --
+	 ---
+	 ----
+	 ...
 	 */
 
 	for(int i = 0; i < bignumber; i++) {
@@ -215,4 +215,616 @@ public class TestIntervalTree extends TestCase {
 			 searchAllIntervals(bignumber - i, bignumber).size());
 	}
     }
+
+
+
+    // Random intervals, checked against a brute force scan.
+    public void testRandomAgainstBruteForce() {
+	java.util.Random random = new java.util.Random(42);
+	List all = new ArrayList();
+	for (int i = 0; i < 2000; i++) {
+	    int low = random.nextInt(10000);
+	    Interval interval = new Interval(low, low + random.nextInt(100));
+	    tree.insert(interval);
+	    all.add(interval);
+	}
+	assertTrue(tree.isValid());
+
+	for (int i = 0; i < 200; i++) {
+	    int low = random.nextInt(10000);
+	    Interval query = new Interval(low, low + random.nextInt(50));
+	    List expected = new ArrayList();
+	    for (int j = 0; j < all.size(); j++) {
+		if (((Interval) all.get(j)).overlaps(query))
+		    expected.add(all.get(j));
+	    }
+	    java.util.Collections.sort(expected);
+	    assertEquals(expected,
+			 searchAllIntervals(query.getLow(), query.getHigh()));
+	    assertEquals(expected.isEmpty(), tree.search(query) == null);
+	}
+    }
+
+
+
+    public void testRemove() {
+	prepareTestCaseTree();
+	assertTrue(tree.remove(new Interval(25, 30)));
+	assertTrue(tree.isValid());
+	assertEquals(null, searchInterval(27, 29));
+	assertEquals(9, tree.size());
+	assertFalse(tree.remove(new Interval(25, 30)));
+	assertFalse(tree.remove(new Interval(0, 4)));
+	assertEquals(9, tree.size());
+    }
+
+
+    public void testRemoveDuplicatesOneAtATime() {
+	prepareTestCaseTree();
+	prepareTestCaseTree();
+	prepareTestCaseTree();
+	assertEquals(3, searchAllIntervals(24, 25).size());
+	assertTrue(tree.remove(new Interval(25, 30)));
+	assertEquals(2, searchAllIntervals(24, 25).size());
+	assertTrue(tree.remove(new Interval(25, 30)));
+	assertTrue(tree.remove(new Interval(25, 30)));
+	assertEquals(0, searchAllIntervals(24, 25).size());
+	assertTrue(tree.isValid());
+    }
+
+
+    // Remove random intervals and check both the augmentation and the
+    // query results against a brute force list.
+    public void testRandomRemovals() {
+	java.util.Random random = new java.util.Random(3);
+	List all = new ArrayList();
+	for (int i = 0; i < 2000; i++) {
+	    int low = random.nextInt(500);
+	    Interval interval = new Interval(low, low + random.nextInt(50));
+	    tree.insert(interval);
+	    all.add(interval);
+	}
+
+	while (all.size() > 0) {
+	    Interval victim = (Interval) all.remove(random.nextInt(all.size()));
+	    assertTrue(tree.remove(victim));
+	    if (all.size() % 100 == 0) {
+		assertTrue(tree.isValid());
+		int low = random.nextInt(500);
+		Interval query = new Interval(low, low + 20);
+		int expected = 0;
+		for (int j = 0; j < all.size(); j++) {
+		    if (((Interval) all.get(j)).overlaps(query))
+			expected++;
+		}
+		assertEquals(expected, tree.searchAll(query).size());
+	    }
+	}
+	assertEquals(0, tree.size());
+    }
+
+
+    public void testVisitorSeesEveryMatch() {
+	prepareTestCaseTree();
+	final List seen = new ArrayList();
+	assertTrue(tree.searchAll(new Interval(1, 7), new IntervalVisitor() {
+		public boolean visit(Interval interval) {
+		    seen.add(interval);
+		    return true;
+		}
+	    }));
+	java.util.Collections.sort(seen);
+	assertEquals(searchAllIntervals(1, 7), seen);
+    }
+
+
+    public void testVisitorCanStopEarly() {
+	for (int i = 0; i < 100; i++) {
+	    tree.insert(new Interval(0, i));
+	}
+	final int[] count = new int[1];
+	assertFalse(tree.forEachOverlap(50, 60, new IntervalVisitor() {
+		public boolean visit(Interval interval) {
+		    count[0]++;
+		    return count[0] < 5;
+		}
+	    }));
+	assertEquals(5, count[0]);
+    }
+
+
+    public void testVisitorOnEmptyTree() {
+	assertTrue(tree.forEachOverlap(0, 10, new IntervalVisitor() {
+		public boolean visit(Interval interval) {
+		    fail();
+		    return true;
+		}
+	    }));
+    }
+
+
+    public void testOverlapIteratorMatchesSearchAll() {
+	java.util.Random random = new java.util.Random(11);
+	for (int i = 0; i < 3000; i++) {
+	    int low = random.nextInt(10000);
+	    tree.insert(new Interval(low, low + random.nextInt(200)));
+	}
+	for (int i = 0; i < 100; i++) {
+	    int low = random.nextInt(10000);
+	    int high = low + random.nextInt(500);
+	    List iterated = new ArrayList();
+	    Iterator it = tree.overlapIterator(low, high);
+	    while (it.hasNext()) {
+		iterated.add(it.next());
+	    }
+	    java.util.Collections.sort(iterated);
+	    assertEquals(searchAllIntervals(low, high), iterated);
+	}
+    }
+
+
+    public void testOverlapIteratorOnEmptyTree() {
+	Iterator it = tree.overlapIterator(0, 10);
+	assertFalse(it.hasNext());
+	try {
+	    it.next();
+	    fail();
+	} catch (java.util.NoSuchElementException e) {
+	    // expected
+	}
+    }
+
+
+    public void testBulkLoad() {
+	Interval[] sorted = new Interval[5000];
+	for (int i = 0; i < sorted.length; i++) {
+	    sorted[i] = new Interval(i, i + (i % 17));
+	}
+	tree.bulkLoad(sorted);
+	assertTrue(tree.isValid());
+	assertEquals(sorted.length, tree.size());
+
+	IntervalTree reference = new IntervalTree();
+	for (int i = 0; i < sorted.length; i++) {
+	    reference.insert(sorted[i]);
+	}
+	for (int i = 0; i < 5000; i += 97) {
+	    List expected = reference.searchAll(new Interval(i, i + 30));
+	    java.util.Collections.sort(expected);
+	    assertEquals(expected, searchAllIntervals(i, i + 30));
+	}
+    }
+
+
+    public void testBulkLoadMergesWithExistingIntervals() {
+	prepareTestCaseTree();
+	tree.bulkLoad(new Interval[] {
+	    new Interval(1, 2), new Interval(7, 7), new Interval(40, 50) });
+	assertTrue(tree.isValid());
+	assertEquals(13, tree.size());
+
+	List expected = new ArrayList();
+	expected.add(new Interval(5, 8));
+	expected.add(new Interval(6, 10));
+	expected.add(new Interval(7, 7));
+	assertEquals(expected, searchAllIntervals(7, 7));
+	assertEquals(new Interval(40, 50), searchInterval(45, 60));
+
+	tree.insert(new Interval(12, 13));
+	assertTrue(tree.remove(new Interval(1, 2)));
+	assertTrue(tree.isValid());
+    }
+
+
+    public void testBulkLoadUnsorted() {
+	tree.bulkLoadUnsorted(new Interval[] {
+	    new Interval(8, 9), new Interval(0, 3), new Interval(5, 8) });
+	assertTrue(tree.isValid());
+	assertEquals(3, tree.size());
+	try {
+	    tree.bulkLoad(new Interval[] {
+		new Interval(8, 9), new Interval(0, 3) });
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // expected
+	}
+	assertEquals(3, tree.size());
+    }
+
+
+    public void testSearchAllBatchMatchesSingleQueries() {
+	java.util.Random random = new java.util.Random(17);
+	for (int i = 0; i < 3000; i++) {
+	    int low = random.nextInt(10000) - 5000;
+	    tree.insert(new Interval(low, low + random.nextInt(300)));
+	}
+	Interval[] queries = new Interval[500];
+	for (int i = 0; i < queries.length; i++) {
+	    int low = random.nextInt(12000) - 6000;
+	    queries[i] = new Interval(low, low + random.nextInt(100));
+	}
+	queries[7] = queries[3];
+
+	List[] results = tree.searchAllBatch(queries);
+	assertEquals(queries.length, results.length);
+	for (int i = 0; i < queries.length; i++) {
+	    java.util.Collections.sort(results[i]);
+	    assertEquals(searchAllIntervals(queries[i].getLow(),
+					    queries[i].getHigh()),
+			 results[i]);
+	}
+    }
+
+
+    public void testSearchAllBatchWithSharedLows() {
+	// Queries sharing a low but of very different widths split
+	// apart and come back together at almost every node.
+	java.util.Random random = new java.util.Random(10);
+	for (int i = 0; i < 2000; i++) {
+	    int low = random.nextInt(5000);
+	    tree.insert(new Interval(low, low + random.nextInt(50)));
+	}
+	Interval[] queries = new Interval[400];
+	for (int i = 0; i < queries.length; i++) {
+	    int low = random.nextInt(50) * 100;
+	    queries[i] = new Interval(low, low + random.nextInt(2) * 1000);
+	}
+
+	List[] results = tree.searchAllBatch(queries);
+	for (int i = 0; i < queries.length; i++) {
+	    java.util.Collections.sort(results[i]);
+	    assertEquals(searchAllIntervals(queries[i].getLow(),
+					    queries[i].getHigh()),
+			 results[i]);
+	}
+    }
+
+
+    public void testSearchAllBatchOnEmptyTree() {
+	List[] results = tree.searchAllBatch(new Interval[] {
+	    new Interval(0, 1) });
+	assertEquals(1, results.length);
+	assertEquals(new ArrayList(), results[0]);
+	assertEquals(0, tree.searchAllBatch(new Interval[0]).length);
+    }
+
+
+    public void testSearchAllParallelKeepsInputOrder() {
+	java.util.Random random = new java.util.Random(23);
+	for (int i = 0; i < 5000; i++) {
+	    int low = random.nextInt(100000);
+	    tree.insert(new Interval(low, low + random.nextInt(1000)));
+	}
+	Interval[] queries = new Interval[5000];
+	for (int i = 0; i < queries.length; i++) {
+	    int low = random.nextInt(100000);
+	    queries[i] = new Interval(low, low + random.nextInt(100));
+	}
+
+	java.util.concurrent.ForkJoinPool pool =
+	    new java.util.concurrent.ForkJoinPool(4);
+	try {
+	    List[] results = tree.searchAllParallel(queries, pool);
+	    List[] expected = tree.searchAllBatch(queries);
+	    assertEquals(queries.length, results.length);
+	    for (int i = 0; i < queries.length; i++) {
+		java.util.Collections.sort(results[i]);
+		java.util.Collections.sort(expected[i]);
+		assertEquals(expected[i], results[i]);
+	    }
+	    assertEquals(0, tree.searchAllParallel(new Interval[0], pool).length);
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+
+    public void testValuesTravelWithIntervals() {
+	IntervalTree<String> genes = new IntervalTree<String>();
+	genes.insert(new Interval(10, 20), "AT1G01010");
+	genes.insert(new Interval(15, 30), "AT1G01020");
+	genes.insert(new Interval(40, 50), "AT1G01030");
+	genes.insert(new Interval(45, 46));
+
+	List<String> values = genes.searchAllValues(new Interval(18, 19));
+	java.util.Collections.sort(values);
+	assertEquals(2, values.size());
+	assertEquals("AT1G01010", values.get(0));
+	assertEquals("AT1G01020", values.get(1));
+
+	List<IntervalTree.Entry<String>> entries =
+	    genes.searchAllEntries(new Interval(44, 45));
+	assertEquals(2, entries.size());
+	for (int i = 0; i < entries.size(); i++) {
+	    IntervalTree.Entry<String> entry = entries.get(i);
+	    if (entry.getInterval().equals(new Interval(40, 50))) {
+		assertEquals("AT1G01030", entry.getValue());
+	    } else {
+		assertEquals(new Interval(45, 46), entry.getInterval());
+		assertNull(entry.getValue());
+	    }
+	}
+
+	assertEquals("AT1G01030",
+		     genes.searchEntry(new Interval(48, 60)).getValue());
+	assertNull(genes.searchEntry(new Interval(31, 39)));
+	assertEquals(0, genes.searchAllValues(new Interval(31, 39)).size());
+    }
+
+
+    public void testValuesSurviveRotationsAndBulkLoad() {
+	IntervalTree<Integer> numbered = new IntervalTree<Integer>();
+	for (int i = 0; i < 100; i++) {
+	    numbered.insert(new Interval(i * 10, i * 10 + 5),
+			    Integer.valueOf(i));
+	}
+	numbered.remove(new Interval(500, 505));
+	numbered.bulkLoad(new Interval[] { new Interval(2000, 2001) });
+	assertTrue(numbered.isValid());
+	for (int i = 0; i < 100; i++) {
+	    List<Integer> values =
+		numbered.searchAllValues(new Interval(i * 10, i * 10));
+	    if (i == 50) {
+		assertEquals(0, values.size());
+	    } else {
+		assertEquals(1, values.size());
+		assertEquals(i, values.get(0).intValue());
+	    }
+	}
+    }
+
+
+    public void testEqualIntervalsHashEqually() {
+	assertEquals(new Interval(3, 7).hashCode(),
+		     new Interval(3, 7).hashCode());
+	assertFalse(new Interval(3, 7).hashCode()
+		    == new Interval(3, 8).hashCode());
+    }
+
+
+    public void testCountOverlapsMatchesSearchAll() {
+	java.util.Random random = new java.util.Random(20);
+	List all = new ArrayList();
+	for (int i = 0; i < 1000; i++) {
+	    int low = random.nextInt(10000);
+	    Interval interval = new Interval(low, low + random.nextInt(300));
+	    all.add(interval);
+	    tree.insert(interval);
+	}
+	assertEquals(tree.searchAll(new Interval(500, 600)).size(),
+		     tree.countOverlaps(500, 600));
+	tree.enableOverlapCounts();
+	assertEquals(tree.searchAll(new Interval(500, 600)).size(),
+		     tree.countOverlaps(500, 600));
+
+	// The high endpoints must follow later inserts and removes.
+	for (int i = 0; i < 300; i++) {
+	    tree.remove((Interval) all.remove(random.nextInt(all.size())));
+	    int low = random.nextInt(10000);
+	    tree.insert(new Interval(low, low + random.nextInt(300)));
+	}
+	for (int i = 0; i < 200; i++) {
+	    int low = random.nextInt(10500) - 200;
+	    int high = low + random.nextInt(400);
+	    assertEquals(tree.searchAll(new Interval(low, high)).size(),
+			 tree.countOverlaps(low, high));
+	}
+
+	tree.bulkLoad(new Interval[] { new Interval(-5, 20000) });
+	assertEquals(tree.searchAll(new Interval(-1, -1)).size(),
+		     tree.countOverlaps(-1, -1));
+	assertEquals(tree.size(), tree.countOverlaps(-10, 20000));
+    }
+
+
+    public void testCountOverlapsSliding() {
+	tree.insert(new Interval(0, 9));
+	tree.insert(new Interval(5, 14));
+	tree.insert(new Interval(30, 30));
+	int[] counts = tree.countOverlapsSliding(0, 10, 10, 4);
+	assertEquals(4, counts.length);
+	assertEquals(2, counts[0]);
+	assertEquals(1, counts[1]);
+	assertEquals(0, counts[2]);
+	assertEquals(1, counts[3]);
+	assertEquals(0, new IntervalTree().countOverlaps(0, 100));
+    }
+
+
+    public void testStabMatchesPointSearch() {
+	assertNull(tree.stab(5));
+	assertTrue(tree.forEachStabbing(5, new IntervalVisitor() {
+		public boolean visit(Interval interval) {
+		    fail();
+		    return true;
+		}
+	    }));
+
+	java.util.Random random = new java.util.Random(21);
+	for (int i = 0; i < 2000; i++) {
+	    int low = random.nextInt(50000);
+	    tree.insert(new Interval(low, low + random.nextInt(200)));
+	}
+	for (int i = 0; i < 500; i++) {
+	    int pos = random.nextInt(51000) - 500;
+	    Interval point = new Interval(pos, pos);
+	    final List stabbed = new ArrayList();
+	    assertTrue(tree.forEachStabbing(pos, new IntervalVisitor() {
+		    public boolean visit(Interval interval) {
+			stabbed.add(interval);
+			return true;
+		    }
+		}));
+	    List expected = tree.searchAll(point);
+	    java.util.Collections.sort(stabbed);
+	    java.util.Collections.sort(expected);
+	    assertEquals(expected, stabbed);
+
+	    Interval found = tree.stab(pos);
+	    if (expected.isEmpty()) {
+		assertNull(found);
+	    } else {
+		assertTrue(found.overlaps(point));
+	    }
+	}
+    }
+
+
+    public void testForEachStabbingStopsEarly() {
+	for (int i = 0; i < 10; i++) {
+	    tree.insert(new Interval(i, 100));
+	}
+	final int[] seen = new int[1];
+	assertFalse(tree.forEachStabbing(50, new IntervalVisitor() {
+		public boolean visit(Interval interval) {
+		    seen[0]++;
+		    return seen[0] < 4;
+		}
+	    }));
+	assertEquals(4, seen[0]);
+    }
+
+
+    public void testNearest() {
+	assertEquals(0, tree.nearest(10, 3).size());
+	tree.insert(new Interval(0, 5));
+	tree.insert(new Interval(8, 12));
+	tree.insert(new Interval(20, 30));
+	tree.insert(new Interval(40, 41));
+
+	List found = tree.nearest(15, 2);
+	assertEquals(2, found.size());
+	assertEquals(new Interval(8, 12), found.get(0));
+	assertEquals(new Interval(20, 30), found.get(1));
+
+	found = tree.nearest(25, 1);
+	assertEquals(new Interval(20, 30), found.get(0));
+	assertEquals(4, tree.nearest(25, 10).size());
+	assertEquals(0, tree.nearest(25, 0).size());
+    }
+
+
+    public void testNearestMatchesBruteForce() {
+	java.util.Random random = new java.util.Random(22);
+	List all = new ArrayList();
+	for (int i = 0; i < 2000; i++) {
+	    int low = random.nextInt(100000);
+	    Interval interval = new Interval(low, low + random.nextInt(500));
+	    all.add(interval);
+	    tree.insert(interval);
+	}
+	for (int q = 0; q < 200; q++) {
+	    int pos = random.nextInt(102000) - 1000;
+	    int k = 1 + random.nextInt(20);
+	    long[] expected = new long[all.size()];
+	    for (int i = 0; i < all.size(); i++) {
+		expected[i] = distance(pos, (Interval) all.get(i));
+	    }
+	    java.util.Arrays.sort(expected);
+
+	    List found = tree.nearest(pos, k);
+	    assertEquals(k, found.size());
+	    for (int i = 0; i < k; i++) {
+		assertEquals(expected[i], distance(pos, (Interval) found.get(i)));
+	    }
+	}
+    }
+
+
+    private static long distance(int pos, Interval interval) {
+	if (pos < interval.getLow())
+	    return interval.getLow() - pos;
+	if (pos > interval.getHigh())
+	    return pos - interval.getHigh();
+	return 0;
+    }
+
+
+    public void testStabAtIntExtremes() {
+	tree.insert(new Interval(0, 10));
+	tree.insert(new Interval(20, 30));
+	tree.insert(new Interval(40, 50));
+	assertNull(tree.stab(Integer.MIN_VALUE));
+	assertNull(tree.stab(Integer.MAX_VALUE));
+	assertEquals(0, stabbing(Integer.MIN_VALUE).size());
+	assertEquals(0, stabbing(Integer.MAX_VALUE).size());
+
+	tree.insert(new Interval(Integer.MIN_VALUE, Integer.MIN_VALUE));
+	tree.insert(new Interval(Integer.MAX_VALUE - 1, Integer.MAX_VALUE));
+	assertEquals(new Interval(Integer.MIN_VALUE, Integer.MIN_VALUE),
+		     tree.stab(Integer.MIN_VALUE));
+	assertEquals(new Interval(Integer.MAX_VALUE - 1, Integer.MAX_VALUE),
+		     tree.stab(Integer.MAX_VALUE));
+	assertEquals(1, stabbing(Integer.MIN_VALUE).size());
+	assertEquals(1, stabbing(Integer.MAX_VALUE).size());
+    }
+
+
+    private List stabbing(int pos) {
+	final List results = new ArrayList();
+	tree.forEachStabbing(pos, new IntervalVisitor() {
+		public boolean visit(Interval interval) {
+		    results.add(interval);
+		    return true;
+		}
+	    });
+	return results;
+    }
+
+
+    public void testCountOverlapsEdgeCases() {
+	tree.insert(new Interval(0, 10));
+	tree.insert(new Interval(Integer.MAX_VALUE - 5, Integer.MAX_VALUE));
+	checkCountOverlapsEdgeCases();
+	tree.enableOverlapCounts();
+	checkCountOverlapsEdgeCases();
+    }
+
+
+    private void checkCountOverlapsEdgeCases() {
+	assertEquals(0, tree.countOverlaps(10, 0));
+	assertEquals(1, tree.countOverlaps(Integer.MAX_VALUE,
+					   Integer.MAX_VALUE));
+
+	// The last windows run past Integer.MAX_VALUE.
+	int[] counts = tree.countOverlapsSliding(Integer.MAX_VALUE - 20,
+						 10, 10, 4);
+	assertEquals(0, counts[0]);
+	assertEquals(1, counts[1]);
+	assertEquals(1, counts[2]);
+	assertEquals(0, counts[3]);
+	counts = tree.countOverlapsSliding(Integer.MIN_VALUE + 5, 10, -10, 2);
+	assertEquals(0, counts[0]);
+	assertEquals(0, counts[1]);
+    }
+
+
+    public void testBulkLoadWithValues() {
+	IntervalTree<String> genes = new IntervalTree<String>();
+	genes.insert(new Interval(12, 14), "middle");
+	genes.bulkLoad(new Interval[] { new Interval(1, 5),
+					new Interval(20, 25) },
+	    new String[] { "first", "last" });
+	genes.bulkLoadUnsorted(new Interval[] { new Interval(40, 45),
+						new Interval(30, 35) },
+	    new String[] { "forty", "thirty" });
+	assertEquals(5, genes.size());
+	assertTrue(genes.isValid());
+	assertEquals("first",
+		     genes.searchEntry(new Interval(3, 3)).getValue());
+	String[] expected = { "middle", "last", "thirty", "forty" };
+	int[] positions = { 13, 22, 31, 44 };
+	for (int i = 0; i < positions.length; i++) {
+	    Interval point = new Interval(positions[i], positions[i]);
+	    assertEquals(expected[i], genes.searchAllValues(point).get(0));
+	}
+
+	try {
+	    genes.bulkLoad(new Interval[] { new Interval(50, 51) },
+			   new String[0]);
+	    fail();
+	} catch (IllegalArgumentException e) {
+	}
+	assertEquals(5, genes.size());
+    }
 }
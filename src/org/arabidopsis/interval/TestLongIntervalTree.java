@@ -0,0 +1,148 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+public class TestLongIntervalTree extends TestCase {
+    private static final long BIG = 1L << 40;
+
+    private LongIntervalTree tree;
+
+    public void setUp() {
+	this.tree = new LongIntervalTree();
+    }
+
+    public void tearDown() {
+	this.tree = null;
+    }
+
+
+    public void testEmptyCase() {
+	assertEquals(null, tree.search(new LongInterval(0, 42)));
+	assertEquals(0, tree.searchAll(new LongInterval(0, 42)).size());
+	assertTrue(tree.isValid());
+    }
+
+
+    public void testCoordinatesPastIntRange() {
+	tree.insert(new LongInterval(BIG, BIG + 10));
+	tree.insert(new LongInterval(BIG + 20, BIG + 30));
+	tree.insert(new LongInterval(5, 10));
+	assertEquals(new LongInterval(BIG + 20, BIG + 30),
+		     tree.search(new LongInterval(BIG + 25, BIG + 25)));
+	assertEquals(null, tree.search(new LongInterval(BIG + 11, BIG + 19)));
+	// Truncated to an int, BIG + 5 would be 5 and also hit [5, 10].
+	assertEquals(1, tree.searchAll(new LongInterval(BIG + 5,
+							BIG + 5)).size());
+	assertEquals(1, tree.searchAll(new LongInterval(7, 7)).size());
+	assertTrue(tree.isValid());
+    }
+
+
+    public void testRemove() {
+	tree.insert(new LongInterval(BIG, BIG + 1));
+	tree.insert(new LongInterval(BIG, BIG + 2));
+	assertFalse(tree.remove(new LongInterval(BIG, BIG + 3)));
+	assertTrue(tree.remove(new LongInterval(BIG, BIG + 1)));
+	assertEquals(1, tree.size());
+	assertEquals(new LongInterval(BIG, BIG + 2),
+		     tree.search(new LongInterval(BIG, BIG)));
+	assertTrue(tree.isValid());
+    }
+
+
+    public void testVisitorStopsEarly() {
+	for (int i = 0; i < 10; i++) {
+	    tree.insert(new LongInterval(BIG + i, BIG + i + 5));
+	}
+	final int[] seen = new int[1];
+	boolean finished = tree.forEachOverlap
+	    (BIG, BIG + 100, new LongIntervalVisitor() {
+		    public boolean visit(LongInterval interval) {
+			seen[0]++;
+			return seen[0] < 3;
+		    }
+		});
+	assertFalse(finished);
+	assertEquals(3, seen[0]);
+    }
+
+
+    public void testBulkLoadMergesExisting() {
+	tree.insert(new LongInterval(BIG + 50, BIG + 60));
+	tree.bulkLoad(new LongInterval[] {
+	    new LongInterval(BIG, BIG + 5),
+	    new LongInterval(BIG + 100, BIG + 105) });
+	assertEquals(3, tree.size());
+	assertTrue(tree.isValid());
+	LongInterval[] all = tree.toArray();
+	assertEquals(BIG, all[0].getLow());
+	assertEquals(BIG + 50, all[1].getLow());
+	assertEquals(BIG + 100, all[2].getLow());
+	try {
+	    tree.bulkLoad(new LongInterval[] {
+		new LongInterval(BIG + 1, BIG + 2),
+		new LongInterval(BIG, BIG + 2) });
+	    fail();
+	} catch (IllegalArgumentException e) {
+	}
+    }
+
+
+    public void testAgainstBruteForce() {
+	Random random = new Random(18);
+	List all = new ArrayList();
+	for (int i = 0; i < 500; i++) {
+	    long low = BIG + random.nextInt(100000) * 1000L;
+	    LongInterval interval =
+		new LongInterval(low, low + random.nextInt(50000));
+	    all.add(interval);
+	    tree.insert(interval);
+	}
+	for (int i = 0; i < 100; i++) {
+	    tree.remove((LongInterval) all.remove(random.nextInt(all.size())));
+	}
+	assertTrue(tree.isValid());
+	for (int i = 0; i < 200; i++) {
+	    long low = BIG + random.nextInt(100000) * 1000L;
+	    LongInterval query = new LongInterval(low, low + 20000);
+	    int expected = 0;
+	    for (int j = 0; j < all.size(); j++) {
+		if (((LongInterval) all.get(j)).overlaps(query))
+		    expected++;
+	    }
+	    assertEquals(expected, tree.searchAll(query).size());
+	    assertEquals(expected > 0, tree.search(query) != null);
+	}
+    }
+
+
+    public void testQueriesAtLongExtremes() {
+	tree.insert(new LongInterval(BIG, BIG + 10));
+	tree.insert(new LongInterval(BIG + 20, BIG + 30));
+	tree.insert(new LongInterval(-BIG, -BIG + 5));
+	LongInterval everything =
+	    new LongInterval(Long.MIN_VALUE, Long.MAX_VALUE);
+	assertEquals(3, tree.searchAll(everything).size());
+	assertEquals(0, tree.searchAll
+		     (new LongInterval(Long.MIN_VALUE, Long.MIN_VALUE)).size());
+	assertEquals(0, tree.searchAll
+		     (new LongInterval(Long.MAX_VALUE, Long.MAX_VALUE)).size());
+	assertNull(tree.search
+		   (new LongInterval(Long.MAX_VALUE, Long.MAX_VALUE)));
+
+	tree.insert(new LongInterval(Long.MIN_VALUE, Long.MIN_VALUE));
+	tree.insert(new LongInterval(Long.MAX_VALUE, Long.MAX_VALUE));
+	assertEquals(5, tree.searchAll(everything).size());
+	assertEquals(new LongInterval(Long.MIN_VALUE, Long.MIN_VALUE),
+		     tree.search(new LongInterval(Long.MIN_VALUE,
+						  Long.MIN_VALUE)));
+	assertEquals(new LongInterval(Long.MAX_VALUE, Long.MAX_VALUE),
+		     tree.search(new LongInterval(Long.MAX_VALUE,
+						  Long.MAX_VALUE)));
+	assertTrue(tree.isValid());
+    }
+}
@@ -0,0 +1,97 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+public class TestMappedIntervalIndex extends TestCase {
+    private File file;
+
+    public void setUp() throws IOException {
+	this.file = File.createTempFile("intervals", ".idx");
+    }
+
+    public void tearDown() {
+	this.file.delete();
+	this.file = null;
+    }
+
+
+    public void testEmptyIndex() throws IOException {
+	MappedIntervalIndex.write(new IntervalTree().freeze(), file);
+	MappedIntervalIndex index = MappedIntervalIndex.open(file);
+	assertEquals(0, index.size());
+	assertEquals(null, index.search(new Interval(0, 42)));
+	assertEquals(new ArrayList(), index.searchAll(new Interval(0, 42)));
+    }
+
+
+    public void testPayloads() throws IOException {
+	Interval[] intervals = new Interval[] {
+	    new Interval(25, 30), new Interval(0, 3), new Interval(6, 10)
+	};
+	byte[][] payloads = new byte[][] {
+	    "At1g01070".getBytes("US-ASCII"),
+	    null,
+	    "At1g01040".getBytes("US-ASCII")
+	};
+	MappedIntervalIndex.write(intervals, payloads, file);
+	MappedIntervalIndex index = MappedIntervalIndex.open(file);
+	assertEquals(3, index.size());
+
+	int entry = index.searchEntry(27, 27);
+	assertEquals(25, index.getLow(entry));
+	assertEquals(30, index.getHigh(entry));
+	assertEquals("At1g01070", string(index.payload(entry)));
+	assertEquals("", string(index.payload(index.searchEntry(1, 1))));
+	assertEquals("At1g01040", string(index.payload(index.searchEntry(7, 7))));
+	assertEquals(-1, index.searchEntry(11, 20));
+    }
+
+
+    public void testAgreesWithIntervalTree() throws IOException {
+	Random random = new Random(19);
+	IntervalTree tree = new IntervalTree();
+	for (int i = 0; i < 5000; i++) {
+	    int low = random.nextInt(50000);
+	    tree.insert(new Interval(low, low + random.nextInt(500)));
+	}
+	MappedIntervalIndex.write(tree.freeze(), file);
+	MappedIntervalIndex index = MappedIntervalIndex.open(file);
+	assertEquals(tree.size(), index.size());
+	for (int i = 0; i < 500; i++) {
+	    int low = random.nextInt(51000);
+	    Interval query = new Interval(low, low + random.nextInt(100));
+	    assertEquals(IntervalTestSupport.sorted(tree.searchAll(query)),
+			 IntervalTestSupport.sorted(index.searchAll(query)));
+	    assertEquals(tree.search(query) == null,
+			 index.search(query) == null);
+	}
+    }
+
+
+    public void testRejectsOtherFiles() throws IOException {
+	FileOutputStream out = new FileOutputStream(file);
+	out.write(new byte[64]);
+	out.close();
+	try {
+	    MappedIntervalIndex.open(file);
+	    fail();
+	} catch (IOException e) {
+	    // expected
+	}
+    }
+
+
+    private String string(ByteBuffer buffer) throws IOException {
+	byte[] bytes = new byte[buffer.remaining()];
+	buffer.get(bytes);
+	return new String(bytes, "US-ASCII");
+    }
+}
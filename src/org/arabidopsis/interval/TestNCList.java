@@ -0,0 +1,107 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+public class TestNCList extends TestCase {
+
+    public void testEmptyCase() {
+	NCList list = new NCList(new Interval[0]);
+	assertEquals(0, list.size());
+	assertEquals(null, list.search(new Interval(0, 42)));
+	assertEquals(new ArrayList(), list.searchAll(new Interval(0, 42)));
+    }
+
+
+    public void testBuiltFromIntervalTree() {
+	IntervalTree tree = new IntervalTree();
+	Interval[] clr = IntervalTestSupport.clrIntervals();
+	for (int i = 0; i < clr.length; i++) {
+	    tree.insert(clr[i]);
+	}
+	NCList list = new NCList(tree);
+	assertEquals(10, list.size());
+
+	List expected = new ArrayList();
+	expected.add(new Interval(0, 3));
+	expected.add(new Interval(5, 8));
+	expected.add(new Interval(6, 10));
+	List results = list.searchAll(new Interval(1, 7));
+	assertEquals(expected, IntervalTestSupport.sorted(results));
+
+	expected = new ArrayList();
+	expected.add(new Interval(15, 23));
+	expected.add(new Interval(16, 21));
+	expected.add(new Interval(17, 19));
+	expected.add(new Interval(19, 20));
+	results = list.searchAll(new Interval(19, 19));
+	assertEquals(expected, IntervalTestSupport.sorted(results));
+
+	assertEquals(null, list.search(new Interval(11, 14)));
+	assertEquals(new Interval(25, 30), list.search(new Interval(24, 25)));
+    }
+
+
+    // Fully nested intervals make one long chain of sublists.
+    public void testDeepNesting() {
+	int bignumber = 1000;
+	Interval[] intervals = new Interval[bignumber];
+	for (int i = 0; i < bignumber; i++) {
+	    intervals[i] = new Interval(0, i);
+	}
+	NCList list = new NCList(intervals);
+	for (int i = 0; i < bignumber; i++) {
+	    assertEquals(i,
+			 list.searchAll(new Interval(bignumber - i,
+						     bignumber)).size());
+	}
+    }
+
+
+    public void testDuplicates() {
+	Interval[] intervals = new Interval[] {
+	    new Interval(5, 10), new Interval(5, 10), new Interval(5, 10)
+	};
+	NCList list = new NCList(intervals);
+	assertEquals(3, list.searchAll(new Interval(7, 7)).size());
+    }
+
+
+    public void testVisitorCanStopEarly() {
+	Interval[] intervals = new Interval[100];
+	for (int i = 0; i < intervals.length; i++) {
+	    intervals[i] = new Interval(i, i + 50);
+	}
+	NCList list = new NCList(intervals);
+	final int[] count = new int[1];
+	assertFalse(list.forEachOverlap(60, 60, new IntervalVisitor() {
+		public boolean visit(Interval interval) {
+		    count[0]++;
+		    return count[0] < 3;
+		}
+	    }));
+	assertEquals(3, count[0]);
+    }
+
+
+    public void testAgreesWithIntervalTree() {
+	Random random = new Random(5);
+	IntervalTree tree = new IntervalTree();
+	for (int i = 0; i < 5000; i++) {
+	    int low = random.nextInt(20000);
+	    tree.insert(new Interval(low, low + random.nextInt(2000)));
+	}
+	NCList list = new NCList(tree);
+	for (int i = 0; i < 500; i++) {
+	    int low = random.nextInt(25000);
+	    Interval query = new Interval(low, low + random.nextInt(100));
+	    assertEquals(IntervalTestSupport.sorted(tree.searchAll(query)),
+			 IntervalTestSupport.sorted(list.searchAll(query)));
+	    assertEquals(tree.search(query) == null,
+			 list.search(query) == null);
+	}
+    }
+}
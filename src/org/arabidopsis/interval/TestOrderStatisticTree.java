@@ -63,5 +63,55 @@ public class TestOrderStatisticTree extends TestCase {
     }
 
 
+    public void testRank() {
+	OrderStatisticTree tree = new OrderStatisticTree();
+	RbNode[] nodes = new RbNode[1000];
+	for (int i = 0; i < nodes.length; i++) {
+	    // Insert out of order so rotations move things about.
+	    nodes[i] = new RbNode((i * 7919) % nodes.length);
+	    tree.insert(nodes[i]);
+	}
+	for (int i = 0; i < nodes.length; i++) {
+	    assertEquals(nodes[i].key + 1, tree.rank(nodes[i]));
+	    assertEquals(nodes[i].key + 1, tree.rank(nodes[i].key));
+	    assertEquals(nodes[i], tree.select(tree.rank(nodes[i])));
+	}
+	assertEquals(0, tree.rank(-1));
+	assertEquals(nodes.length, tree.rank(5000));
+    }
 
+
+    public void testCountInRangeWithDuplicates() {
+	OrderStatisticTree tree = new OrderStatisticTree();
+	for (int i = 0; i < 100; i++) {
+	    tree.insert(new RbNode(i / 4));
+	}
+	assertEquals(100, tree.size());
+	assertEquals(4, tree.countInRange(3, 3));
+	assertEquals(12, tree.countInRange(3, 5));
+	assertEquals(100, tree.countInRange(Integer.MIN_VALUE,
+					    Integer.MAX_VALUE));
+	assertEquals(0, tree.countInRange(5, 3));
+	assertEquals(0, tree.countInRange(30, 40));
+	assertEquals(8, tree.rank(1));
+    }
+
+
+    public void testDelete() {
+	OrderStatisticTree tree = new OrderStatisticTree();
+	RbNode[] nodes = new RbNode[200];
+	for (int i = 0; i < nodes.length; i++) {
+	    nodes[i] = new RbNode(i);
+	    tree.insert(nodes[i]);
+	}
+	for (int i = 0; i < nodes.length; i += 2) {
+	    tree.delete(nodes[i]);
+	}
+	assertEquals(100, tree.size());
+	for (int i = 1; i <= 100; i++) {
+	    assertEquals(2 * i - 1, tree.select(i).key);
+	    assertEquals(i, tree.rank(tree.select(i)));
+	}
+	assertEquals(50, tree.countInRange(0, 99));
+    }
 }
@@ -0,0 +1,103 @@
+package org.arabidopsis.interval;
+
+import junit.framework.TestCase;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+public class TestPersistentIntervalTree extends TestCase {
+    private PersistentIntervalTree tree;
+
+    public void setUp() {
+	this.tree = new PersistentIntervalTree();
+    }
+
+    public void tearDown() {
+	this.tree = null;
+    }
+
+
+    public void testEmptyCase() {
+	assertEquals(0, tree.size());
+	assertEquals(null, tree.search(new Interval(0, 42)));
+	assertEquals(new ArrayList(), tree.searchAll(new Interval(0, 42)));
+	assertTrue(tree.snapshot().isValid());
+    }
+
+
+    public void testSnapshotsDoNotChange() {
+	tree.insert(new Interval(0, 3));
+	tree.insert(new Interval(5, 8));
+	PersistentIntervalTree.Snapshot before = tree.snapshot();
+	tree.insert(new Interval(6, 10));
+
+	assertEquals(2, before.size());
+	assertEquals(3, tree.size());
+	assertEquals(null, before.search(new Interval(9, 10)));
+	assertEquals(new Interval(6, 10), tree.search(new Interval(9, 10)));
+    }
+
+
+    public void testSortedInsertsStayBalanced() {
+	for (int i = 0; i < 30000; i++) {
+	    tree.insert(new Interval(i, i));
+	}
+	assertTrue(tree.snapshot().isValid());
+	assertEquals(30000, tree.searchAll(new Interval(0, 30000)).size());
+    }
+
+
+    public void testAgreesWithIntervalTree() {
+	Random random = new Random(31);
+	IntervalTree reference = new IntervalTree();
+	for (int i = 0; i < 3000; i++) {
+	    int low = random.nextInt(10000);
+	    Interval interval = new Interval(low, low + random.nextInt(300));
+	    reference.insert(interval);
+	    tree.insert(interval);
+	}
+	assertTrue(tree.snapshot().isValid());
+	for (int i = 0; i < 300; i++) {
+	    int low = random.nextInt(10000);
+	    Interval query = new Interval(low, low + random.nextInt(100));
+	    assertEquals
+		(IntervalTestSupport.sorted(reference.searchAll(query)),
+		 IntervalTestSupport.sorted(tree.searchAll(query)));
+	    assertEquals(reference.search(query) == null,
+			 tree.search(query) == null);
+	}
+    }
+
+
+    // Readers keep checking their snapshots while two writers insert.
+    public void testReadersSeeConsistentSnapshots() throws Exception {
+	final int perWriter = 5000;
+	Thread[] writers = new Thread[2];
+	for (int w = 0; w < writers.length; w++) {
+	    final int offset = w * perWriter;
+	    writers[w] = new Thread() {
+		    public void run() {
+			for (int i = 0; i < perWriter; i++) {
+			    tree.insert(new Interval(offset + i, offset + i));
+			}
+		    }
+		};
+	    writers[w].start();
+	}
+
+	int lastSize = 0;
+	while (lastSize < 2 * perWriter) {
+	    PersistentIntervalTree.Snapshot snapshot = tree.snapshot();
+	    int size = snapshot.size();
+	    assertTrue(size >= lastSize);
+	    assertEquals(size, snapshot.searchAll
+			 (new Interval(0, 2 * perWriter)).size());
+	    lastSize = size;
+	}
+	for (int w = 0; w < writers.length; w++) {
+	    writers[w].join();
+	}
+	assertTrue(tree.snapshot().isValid());
+    }
+}
@@ -301,4 +301,196 @@ public class TestRbTree extends TestCase {
 	if (h1 > h2) { return h1; }
 	return h2;
     }
+
+
+
+    public void testDeleteOnlyNode() {
+	RbNode node = new RbNode(5);
+	tree.insert(node);
+	tree.delete(node);
+	assertTrue(tree.root().isNull());
+	assertTrue(tree.root().parent.isNull());
+	assertTrue(tree.isValid());
+    }
+
+
+    public void testDeleteKeepsTreeValid() {
+	int BIGNUMBER = 1000;
+	RbNode[] nodes = new RbNode[BIGNUMBER];
+	for (int i = 0; i < BIGNUMBER; i++) {
+	    nodes[i] = new RbNode(i % 37);
+	    tree.insert(nodes[i]);
+	}
+
+	java.util.Random random = new java.util.Random(1);
+	for (int i = BIGNUMBER - 1; i > 0; i--) {
+	    int j = random.nextInt(i + 1);
+	    RbNode tmp = nodes[i];
+	    nodes[i] = nodes[j];
+	    nodes[j] = tmp;
+	}
+
+	for (int i = 0; i < BIGNUMBER; i++) {
+	    tree.delete(nodes[i]);
+	    assertTrue(nodes[i].parent.isNull());
+	    if (i % 50 == 0) {
+		assertTrue(tree.isValid());
+		assertEquals(BIGNUMBER - i - 1, size(tree.root));
+	    }
+	}
+	assertTrue(tree.root().isNull());
+	assertTrue(tree.isValid());
+    }
+
+
+    public void testDeleteThenTraverse() {
+	RbNode[] nodes = new RbNode[100];
+	for (int i = 0; i < 100; i++) {
+	    nodes[i] = new RbNode(i);
+	    tree.insert(nodes[i]);
+	}
+	for (int i = 0; i < 100; i += 2) {
+	    tree.delete(nodes[i]);
+	}
+	RbNode node = tree.minimum(tree.root());
+	for (int i = 1; i < 100; i += 2) {
+	    assertEquals(i, node.key);
+	    node = tree.successor(node);
+	}
+	assertTrue(node.isNull());
+    }
+
+
+    public void testSizeIsMaintained() {
+	assertEquals(0, tree.size());
+	RbNode[] nodes = new RbNode[500];
+	for (int i = 0; i < nodes.length; i++) {
+	    nodes[i] = new RbNode(i % 10);
+	    tree.insert(nodes[i]);
+	    assertEquals(i + 1, tree.size());
+	}
+	assertTrue(hasCorrectSizes(tree.root));
+	for (int i = 0; i < nodes.length; i += 3) {
+	    tree.delete(nodes[i]);
+	}
+	assertEquals(size(tree.root), tree.size());
+	assertTrue(hasCorrectSizes(tree.root));
+    }
+
+
+    private boolean hasCorrectSizes(RbNode node) {
+	if (node.isNull()) { return node.size == 0; }
+	return (node.size == size(node) &&
+		hasCorrectSizes(node.left) &&
+		hasCorrectSizes(node.right));
+    }
+
+
+    public void testBulkLoadIsValidForAllSmallSizes() {
+	for (int n = 0; n <= 130; n++) {
+	    setUp();
+	    RbNode[] nodes = new RbNode[n];
+	    for (int i = 0; i < n; i++) {
+		nodes[i] = new RbNode(i / 3);
+	    }
+	    tree.bulkLoad(nodes);
+	    assertTrue("n=" + n, tree.isValid());
+	    assertEquals(n, tree.size());
+	    assertTrue(hasCorrectSizes(tree.root));
+	    assertTrue(height(tree.root) <= ln(n + 1) + 1);
+
+	    // The result should still take ordinary updates.
+	    tree.insert(new RbNode(n));
+	    if (n > 0)
+		tree.delete(nodes[n / 2]);
+	    assertTrue(tree.isValid());
+	    tearDown();
+	}
+    }
+
+
+    public void testBulkLoadRejectsUnsortedNodes() {
+	try {
+	    tree.bulkLoad(new RbNode[] { new RbNode(2), new RbNode(1) });
+	    fail();
+	} catch (IllegalArgumentException e) {
+	    // expected
+	}
+    }
+
+
+    // Trees must not share a sentinel, and deletion must leave the
+    // shared placeholder alone.
+    public void testEachTreeHasItsOwnNil() {
+	RbTree other = new RbTree();
+	assertTrue(tree.root().isNull());
+	assertTrue(other.root().isNull());
+	assertNotSame(tree.root(), other.root());
+
+	RbNode[] nodes = new RbNode[200];
+	for (int i = 0; i < nodes.length; i++) {
+	    nodes[i] = new RbNode(i);
+	    tree.insert(nodes[i]);
+	}
+	for (int i = 0; i < nodes.length; i++) {
+	    tree.delete(nodes[i]);
+	    assertSame(RbNode.NIL, nodes[i].parent);
+	}
+	assertSame(RbNode.NIL, RbNode.NIL.parent);
+	assertSame(RbNode.NIL, RbNode.NIL.left);
+	assertSame(RbNode.NIL, RbNode.NIL.right);
+	assertEquals(RbNode.BLACK, RbNode.NIL.color);
+	assertTrue(tree.isValid());
+	assertTrue(other.isValid());
+    }
+
+
+    // Independent trees churned on separate threads stay valid.
+    public void testIndependentTreesOnSeparateThreads() throws Exception {
+	final RbTree[] trees = new RbTree[4];
+	final boolean[] valid = new boolean[trees.length];
+	Thread[] threads = new Thread[trees.length];
+	for (int t = 0; t < trees.length; t++) {
+	    final int id = t;
+	    trees[t] = new RbTree();
+	    threads[t] = new Thread() {
+		    public void run() {
+			java.util.Random random = new java.util.Random(id);
+			RbNode[] nodes = new RbNode[2000];
+			for (int round = 0; round < 10; round++) {
+			    for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = new RbNode(random.nextInt(500));
+				trees[id].insert(nodes[i]);
+			    }
+			    for (int i = 0; i < nodes.length; i++) {
+				trees[id].delete(nodes[i]);
+			    }
+			}
+			valid[id] = trees[id].isValid() && trees[id].size() == 0;
+		    }
+		};
+	    threads[t].start();
+	}
+	for (int t = 0; t < trees.length; t++) {
+	    threads[t].join();
+	    assertTrue(valid[t]);
+	}
+    }
+
+
+    public void testCountLessAndGreater() {
+	RbTree tree = new RbTree();
+	int[] keys = { 5, 1, 9, 5, 3, 7, 5 };
+	for (int i = 0; i < keys.length; i++) {
+	    tree.insert(new RbNode(keys[i]));
+	}
+	assertEquals(0, tree.countLess(1));
+	assertEquals(2, tree.countLess(5));
+	assertEquals(5, tree.countLess(6));
+	assertEquals(7, tree.countLess(100));
+	assertEquals(2, tree.countGreater(5));
+	assertEquals(0, tree.countGreater(9));
+	assertEquals(7, tree.countGreater(0));
+	assertEquals(0, new RbTree().countLess(3));
+    }
 }